@@ -7,3 +7,22 @@ ALTER TABLE email_log MODIFY id BIGINT AUTO_INCREMENT;
 ALTER TABLE invoice_history MODIFY id BIGINT AUTO_INCREMENT;
 ALTER TABLE traveler_questions MODIFY id BIGINT AUTO_INCREMENT;
 ALTER TABLE visa_urls MODIFY id BIGINT AUTO_INCREMENT;
+CREATE INDEX IF NOT EXISTS idx_travelers_created_id ON travelers (created_at, id);
+ALTER TABLE email_log MODIFY record_id INT NULL;
+ALTER TABLE email_log MODIFY record_type VARCHAR(20) NULL;
+ALTER TABLE email_log MODIFY sent_at TIMESTAMP NULL;
+ALTER TABLE email_log ADD COLUMN IF NOT EXISTS email_type VARCHAR(20);
+ALTER TABLE email_log ADD COLUMN IF NOT EXISTS payload MEDIUMTEXT;
+ALTER TABLE email_log ADD COLUMN IF NOT EXISTS attempts INT DEFAULT 0;
+ALTER TABLE email_log ADD COLUMN IF NOT EXISTS next_attempt_at DATETIME;
+ALTER TABLE email_log ADD COLUMN IF NOT EXISTS last_error VARCHAR(500);
+ALTER TABLE email_log ADD COLUMN IF NOT EXISTS claim_token VARCHAR(36);
+ALTER TABLE email_log ADD COLUMN IF NOT EXISTS queued_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP;
+CREATE INDEX IF NOT EXISTS idx_email_log_due ON email_log (status, next_attempt_at);
+ALTER TABLE package_pricing ADD COLUMN IF NOT EXISTS country VARCHAR(100) NOT NULL DEFAULT '' AFTER package_name;
+ALTER TABLE package_pricing ADD COLUMN IF NOT EXISTS visa_type VARCHAR(100) NOT NULL DEFAULT '' AFTER country;
+ALTER TABLE package_pricing DROP INDEX IF EXISTS package_name;
+CREATE UNIQUE INDEX IF NOT EXISTS idx_package_pricing_key ON package_pricing (package_name, country, visa_type);
+INSERT IGNORE INTO package_pricing (package_name, price, sort_order) VALUES ('Appointment Only', 99.00, 1), ('Full Support', 149.00, 2), ('Fast Track Appointment', 199.00, 3), ('Fast Track Full Support', 349.00, 4);
+CREATE UNIQUE INDEX IF NOT EXISTS public_url_token ON travelers (public_url_token);
+CREATE UNIQUE INDEX IF NOT EXISTS public_url_token ON dependents (public_url_token);
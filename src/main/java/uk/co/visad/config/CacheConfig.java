@@ -0,0 +1,52 @@
+package uk.co.visad.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Spring cache (@Cacheable / @CacheEvict) backed by bounded in-process Caffeine
+ * caches, one per declared name, each sized and expired by its own Caffeine
+ * spec under app.cache.*. Statistics are recorded for every cache (GET
+ * /api/admin/cache-stats).
+ *
+ * The manager is transaction-aware: puts and evictions made inside a
+ * transaction are applied after it commits, so a concurrent reader cannot
+ * re-cache data that is about to change.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String VISA_URLS = "visa_urls";
+    public static final String VISA_URL_LOOKUP = "visa_url_lookup";
+
+    @Value("${app.cache.visa-urls:maximumSize=1,expireAfterWrite=1h}")
+    private String visaUrlsSpec;
+
+    @Value("${app.cache.visa-url-lookup:maximumSize=1,expireAfterWrite=1h}")
+    private String visaUrlLookupSpec;
+
+    @Bean
+    public CacheManager cacheManager() {
+        SimpleCacheManager manager = new SimpleCacheManager();
+        manager.setCaches(List.of(
+                cache(VISA_URLS, visaUrlsSpec),
+                cache(VISA_URL_LOOKUP, visaUrlLookupSpec)));
+        return manager;
+    }
+
+    private static Cache cache(String name, String spec) {
+        return new TransactionAwareCacheDecorator(
+                new CaffeineCache(name, Caffeine.from(spec).recordStats().build()));
+    }
+}
@@ -0,0 +1,32 @@
+package uk.co.visad.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import uk.co.visad.service.InMemoryPresenceStore;
+import uk.co.visad.service.JdbcPresenceStore;
+import uk.co.visad.service.PresenceStore;
+
+/**
+ * Selects where presence state lives via app.presence.store:
+ * "memory" (default, single node) or "jdbc" (shared across nodes).
+ */
+@Configuration
+public class PresenceStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.presence.store", havingValue = "memory", matchIfMissing = true)
+    public PresenceStore inMemoryPresenceStore() {
+        return new InMemoryPresenceStore();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.presence.store", havingValue = "jdbc")
+    public PresenceStore jdbcPresenceStore(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            @Value("${app.presence.lease-timeout-seconds:180}") int leaseTimeoutSeconds) {
+        return new JdbcPresenceStore(jdbcTemplate, objectMapper, leaseTimeoutSeconds);
+    }
+}
@@ -1,5 +1,6 @@
 package uk.co.visad.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
@@ -8,6 +9,7 @@ import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBr
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import uk.co.visad.security.AuthChannelInterceptor;
+import uk.co.visad.security.StompConnectErrorHandler;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -15,9 +17,28 @@ import uk.co.visad.security.AuthChannelInterceptor;
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final AuthChannelInterceptor authChannelInterceptor;
+    private final StompConnectErrorHandler stompConnectErrorHandler;
 
-    public WebSocketConfig(AuthChannelInterceptor authChannelInterceptor) {
+    // "simple" = in-process broker (single node); "relay" = external STOMP broker (multi-node)
+    @Value("${app.websocket.broker:simple}")
+    private String brokerMode;
+
+    @Value("${app.websocket.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${app.websocket.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${app.websocket.relay.passcode:guest}")
+    private String relayPasscode;
+
+    public WebSocketConfig(AuthChannelInterceptor authChannelInterceptor,
+                           StompConnectErrorHandler stompConnectErrorHandler) {
         this.authChannelInterceptor = authChannelInterceptor;
+        this.stompConnectErrorHandler = stompConnectErrorHandler;
     }
 
     @jakarta.annotation.PostConstruct
@@ -27,7 +48,21 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue"); // Public broadcasts & user-specific
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            // Every node relays to the same broker, so a broadcast from any node reaches all clients
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    // Resolve /user destinations for sessions connected to other nodes
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+        } else {
+            config.enableSimpleBroker("/topic", "/queue"); // Public broadcasts & user-specific
+        }
         config.setApplicationDestinationPrefixes("/app"); // Server-side handling
         config.setUserDestinationPrefix("/user"); // User-specific queues
     }
@@ -37,6 +72,8 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*") // Allow all origins for MVP, restrict in Prod (or use specific frontend URL)
                 .withSockJS(); // Enable SockJS fallback
+        // Throttled CONNECTs get an ERROR frame with a retry-after-ms hint
+        registry.setErrorHandler(stompConnectErrorHandler);
     }
 
     @Override
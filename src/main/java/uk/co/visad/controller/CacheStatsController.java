@@ -0,0 +1,53 @@
+package uk.co.visad.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import uk.co.visad.dto.ApiResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics of the Spring caches (see CacheConfig).
+ *
+ * GET /api/admin/cache-stats   size, hits, misses, hit rate and evictions per cache
+ * Requires a valid JWT (admin login).
+ */
+@RestController
+@RequestMapping("/admin")
+@RequiredArgsConstructor
+public class CacheStatsController {
+
+    private final CacheManager cacheManager;
+
+    @GetMapping("/cache-stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> cacheStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            org.springframework.cache.Cache cache = cacheManager.getCache(name);
+            if (cache instanceof TransactionAwareCacheDecorator decorator) {
+                cache = decorator.getTargetCache();
+            }
+            if (cache instanceof CaffeineCache caffeineCache) {
+                Cache<Object, Object> nativeCache = caffeineCache.getNativeCache();
+                CacheStats stats = nativeCache.stats();
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("size", nativeCache.estimatedSize());
+                entry.put("hits", stats.hitCount());
+                entry.put("misses", stats.missCount());
+                entry.put("hit_rate", stats.hitRate());
+                entry.put("evictions", stats.evictionCount());
+                result.put(name, entry);
+            }
+        }
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+}
@@ -1,24 +1,50 @@
 package uk.co.visad.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import uk.co.visad.dto.ApiResponse;
 import uk.co.visad.dto.EmailInvoiceRequest;
 import uk.co.visad.dto.VerificationEmailRequest;
+import uk.co.visad.entity.EmailLog;
+import uk.co.visad.service.EmailOutboxService;
 import uk.co.visad.service.EmailService;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/email")
 @RequiredArgsConstructor
 public class EmailController {
 
     private final EmailService emailService;
+    private final EmailOutboxService emailOutboxService;
 
+    /**
+     * Queues the invoice email(s); rendering and SMTP happen in the outbox workers.
+     */
     @PostMapping("/send-invoice")
-    public ResponseEntity<ApiResponse<Void>> sendInvoice(@RequestBody EmailInvoiceRequest request) {
-        emailService.sendInvoiceEmail(request);
-        return ResponseEntity.ok(ApiResponse.successMessage("Email sent successfully"));
+    public ResponseEntity<ApiResponse<Map<String, Object>>> sendInvoice(@RequestBody EmailInvoiceRequest request) {
+        List<Long> jobIds = emailOutboxService.enqueueInvoice(request);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.success(Map.of("job_ids", jobIds), "Email queued for sending"));
+    }
+
+    @GetMapping("/status/{id}")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> status(@PathVariable Long id) {
+        EmailLog job = emailOutboxService.getStatus(id);
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", job.getId());
+        data.put("status", job.getStatus());
+        data.put("recipient_email", job.getRecipientEmail());
+        data.put("attempts", job.getAttempts());
+        data.put("last_error", job.getLastError());
+        data.put("queued_at", job.getQueuedAt());
+        data.put("sent_at", job.getSentAt());
+        return ResponseEntity.ok(ApiResponse.success(data));
     }
 
     @PostMapping("/send-verification")
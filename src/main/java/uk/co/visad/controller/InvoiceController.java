@@ -45,6 +45,11 @@ public class InvoiceController {
         return ResponseEntity.ok(ApiResponse.success(result));
     }
 
+    @GetMapping("/view-cache/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getViewCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(invoiceService.getViewCacheStats()));
+    }
+
     @GetMapping("/{recordType}/{id}")
     public ResponseEntity<ApiResponse<uk.co.visad.dto.InvoiceViewDto>> getInvoiceView(
             @PathVariable String recordType,
@@ -13,6 +13,7 @@ import uk.co.visad.exception.ResourceNotFoundException;
 import uk.co.visad.exception.UnauthorizedException;
 import uk.co.visad.service.FileUploadService;
 import uk.co.visad.service.LockerActivityService;
+import uk.co.visad.service.LockerAutosaveCoalescer;
 import uk.co.visad.service.LockerService;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
@@ -34,6 +35,7 @@ public class LockerController {
     private final LockerService lockerService;
     private final FileUploadService fileUploadService;
     private final LockerActivityService lockerActivityService;
+    private final LockerAutosaveCoalescer lockerAutosaveCoalescer;
 
     /**
      * Verify token and password
@@ -43,6 +45,8 @@ public class LockerController {
         log.info("Token verification requested: {}", request.getToken());
 
         try {
+            // A reload must see the changes still waiting to be autosaved
+            lockerAutosaveCoalescer.flush(request.getToken());
             ApplicantDataDTO data = lockerService.verifyAndGetData(
                     request.getToken(),
                     request.getPassword());
@@ -66,7 +70,7 @@ public class LockerController {
     public ResponseEntity<ApiResponse<Void>> updatePersonal(@Valid @RequestBody UpdatePersonalRequest request) {
         log.info("Update personal info: token={}, field={}", request.getToken(), request.getField());
 
-        lockerService.updatePersonalField(
+        lockerAutosaveCoalescer.updatePersonal(
                 request.getToken(),
                 request.getField(),
                 request.getValue());
@@ -81,7 +85,7 @@ public class LockerController {
     public ResponseEntity<ApiResponse<Void>> updateQuestions(@Valid @RequestBody UpdateQuestionsRequest request) {
         log.info("Update questions: token={}, fields={}", request.getToken(), request.getData().keySet());
 
-        lockerService.updateQuestionFields(
+        lockerAutosaveCoalescer.updateQuestions(
                 request.getToken(),
                 request.getData());
 
@@ -162,7 +166,7 @@ public class LockerController {
     public ResponseEntity<ApiResponse<Void>> updateProgress(@Valid @RequestBody UpdateProgressRequest request) {
         log.info("Update progress: token={}, percentage={}", request.getToken(), request.getPercentage());
 
-        lockerService.updateProgress(request.getToken(), request.getPercentage());
+        lockerAutosaveCoalescer.updateProgress(request.getToken(), request.getPercentage());
 
         return ResponseEntity.ok(ApiResponse.successMessage("Progress updated"));
     }
@@ -174,7 +178,7 @@ public class LockerController {
     public ResponseEntity<ApiResponse<Void>> markComplete(@Valid @RequestBody TokenRequest request) {
         log.info("Mark complete: token={}", request.getToken());
 
-        lockerService.markApplicationComplete(request.getToken());
+        lockerAutosaveCoalescer.submit(request.getToken());
 
         return ResponseEntity.ok(ApiResponse.successMessage("Application submitted"));
     }
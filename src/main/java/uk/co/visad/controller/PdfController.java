@@ -1,14 +1,15 @@
 package uk.co.visad.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import uk.co.visad.dto.EmailInvoiceRequest;
 import uk.co.visad.service.PdfService;
 
-import java.io.ByteArrayInputStream;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/pdf")
@@ -18,16 +19,35 @@ public class PdfController {
     private final PdfService pdfService;
 
     @RequestMapping(value = "/generate", method = { RequestMethod.GET, RequestMethod.POST })
-    public ResponseEntity<InputStreamResource> generatePdf(@RequestParam(defaultValue = "Document") String title) {
-        ByteArrayInputStream bis = pdfService.generatePdf(title);
+    public ResponseEntity<byte[]> generatePdf(@RequestParam(defaultValue = "Document") String title) {
+        return pdfResponse(() -> pdfService.renderDocument(title), "generated.pdf");
+    }
+
+    @PostMapping("/invoice")
+    public ResponseEntity<byte[]> invoicePdf(@RequestBody EmailInvoiceRequest request) {
+        String invoiceNumber = request.getInvoiceNumber() == null ? "invoice"
+                : request.getInvoiceNumber().replaceAll("[^a-zA-Z0-9\\-_]", "");
+        return pdfResponse(() -> pdfService.renderInvoice(request), "Invoice-" + invoiceNumber + ".pdf");
+    }
+
+    private ResponseEntity<byte[]> pdfResponse(Supplier<byte[]> renderer, String filename) {
+        byte[] pdf;
+        try {
+            pdf = renderer.get();
+        } catch (IllegalStateException e) {
+            // All render slots busy
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
 
         HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-Disposition", "inline; filename=generated.pdf");
+        headers.add("Content-Disposition", "inline; filename=" + filename);
 
         return ResponseEntity
                 .ok()
                 .headers(headers)
                 .contentType(MediaType.APPLICATION_PDF)
-                .body(new InputStreamResource(bis));
+                .body(pdf);
     }
 }
@@ -4,10 +4,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import uk.co.visad.model.presence.Activity;
 import uk.co.visad.model.presence.FieldUpdateMessage;
+import uk.co.visad.service.CoalescingBroadcaster;
 import uk.co.visad.service.PresenceService;
 
 import java.security.Principal;
@@ -18,7 +18,7 @@ import java.security.Principal;
 public class PresenceController {
 
     private final PresenceService presenceService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final CoalescingBroadcaster broadcaster;
 
     @MessageMapping("/activity")
     public void updateActivity(Activity activity, SimpMessageHeaderAccessor headerAccessor) {
@@ -37,6 +37,17 @@ public class PresenceController {
         if (principal != null) {
             message.setUpdatedBy(principal.getName());
         }
-        messagingTemplate.convertAndSend("/topic/field-updates", message);
+        broadcaster.send("/topic/field-updates",
+                message.getTable() + ":" + message.getId() + ":" + message.getField(), message);
+    }
+
+    /**
+     * Client detected a gap in presence versions and needs a fresh snapshot.
+     */
+    @MessageMapping("/presence/resync")
+    public void resync(Principal principal) {
+        if (principal != null) {
+            presenceService.sendSnapshotToUser(principal.getName());
+        }
     }
 }
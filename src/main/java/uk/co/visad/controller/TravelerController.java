@@ -1,10 +1,13 @@
 package uk.co.visad.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import uk.co.visad.dto.ApiResponse;
 import uk.co.visad.dto.TravelerDto;
+import uk.co.visad.service.InvoiceBatchService;
+import uk.co.visad.service.InvoiceBatchService.Progress;
 import uk.co.visad.service.TravelerService;
 
 import java.util.List;
@@ -16,6 +19,7 @@ import java.util.Map;
 public class TravelerController {
 
     private final TravelerService travelerService;
+    private final InvoiceBatchService invoiceBatchService;
 
     /**
      * Create a new traveler
@@ -30,12 +34,18 @@ public class TravelerController {
     /**
      * Get all travelers with pagination
      * PHP equivalent: travelers.php?action=read_all
+     * Passing "cursor" (empty for the first slice) switches to keyset pagination:
+     * no total count, and pagination.nextCursor points at the next slice.
      */
     @GetMapping("")
     public ResponseEntity<ApiResponse<List<TravelerDto>>> readAllTravelers(
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "50") int limit,
-            @RequestParam(defaultValue = "false") boolean summary) {
+            @RequestParam(defaultValue = "false") boolean summary,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return ResponseEntity.ok(travelerService.getTravelersAfterCursor(cursor, limit, summary));
+        }
         return ResponseEntity.ok(travelerService.getAllTravelers(page, limit, summary));
     }
 
@@ -164,8 +174,27 @@ public class TravelerController {
      */
     @PostMapping("/save-all-invoices")
     public ResponseEntity<ApiResponse<Map<String, Object>>> saveAllInvoices() {
-        Map<String, Object> result = travelerService.saveAllInvoices();
-        return ResponseEntity.ok(ApiResponse.success(result, (String) result.get("message")));
+        Progress result;
+        try {
+            result = invoiceBatchService.saveAllInvoices();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ApiResponse.error(e.getMessage()));
+        }
+        String message = "Saved " + result.saved() + " invoices successfully"
+                + (result.failed() > 0 ? ", " + result.failed() + " failed" : "");
+        return ResponseEntity.ok(ApiResponse.success(Map.of(
+                "saved_count", result.saved(),
+                "failed_count", result.failed(),
+                "failures", result.failures(),
+                "message", message), message));
+    }
+
+    /**
+     * Progress of the running save-all-invoices batch, or the last run's result
+     */
+    @GetMapping("/save-all-invoices/status")
+    public ResponseEntity<ApiResponse<Progress>> saveAllInvoicesStatus() {
+        return ResponseEntity.ok(ApiResponse.success(invoiceBatchService.status()));
     }
 
     @PatchMapping("/{id}/questions")
@@ -65,5 +65,8 @@ public class ApiResponse<T> {
         private long totalRecords;
         private int totalPages;
         private boolean hasMore;
+        // Opaque keyset cursor for the next slice (cursor mode only)
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String nextCursor;
     }
 }
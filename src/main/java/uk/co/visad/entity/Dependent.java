@@ -5,6 +5,8 @@ import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import uk.co.visad.listener.InvoiceViewInvalidationListener;
+import uk.co.visad.listener.LockerTokenInvalidationListener;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -15,7 +17,8 @@ import java.time.LocalDateTime;
         @Index(name = "idx_dependents_traveler_id", columnList = "traveler_id"),
         @Index(name = "idx_dependents_passport", columnList = "passport_no")
 })
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({ AuditingEntityListener.class, InvoiceViewInvalidationListener.class,
+        LockerTokenInvalidationListener.class })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -163,7 +166,7 @@ public class Dependent {
     private String logins;
 
     // Public URL Token
-    @Column(name = "public_url_token", length = 20)
+    @Column(name = "public_url_token", length = 20, unique = true)
     private String publicUrlToken;
 
     // Pricing
@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "email_log", indexes = {
-        @Index(name = "idx_email_log_record", columnList = "record_id, record_type")
+        @Index(name = "idx_email_log_record", columnList = "record_id, record_type"),
+        @Index(name = "idx_email_log_due", columnList = "status, next_attempt_at")
 })
 @EntityListeners(AuditingEntityListener.class)
 @Data
@@ -23,10 +24,10 @@ public class EmailLog {
     @Column(columnDefinition = "INT")
     private Long id;
 
-    @Column(name = "record_id", nullable = false, columnDefinition = "INT")
+    @Column(name = "record_id", columnDefinition = "INT")
     private Long recordId;
 
-    @Column(name = "record_type", nullable = false, length = 20)
+    @Column(name = "record_type", length = 20)
     private String recordType;
 
     @Column(name = "recipient_email", nullable = false, length = 150)
@@ -35,14 +36,37 @@ public class EmailLog {
     @Column(name = "sent_by", columnDefinition = "INT")
     private Long sentBy;
 
-    @CreatedDate
-    @Column(name = "sent_at", updatable = false)
+    @Column(name = "sent_at")
     private LocalDateTime sentAt;
 
     @Column(length = 255)
     private String subject;
 
+    // Outbox lifecycle: queued -> sending -> sent | failed (retries go back to queued)
     @Column(length = 20)
     @Builder.Default
-    private String status = "sent";
+    private String status = "queued";
+
+    @Column(name = "email_type", length = 20)
+    private String emailType;
+
+    // Serialized job (request + recipients), rendered and sent by EmailOutboxService
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String payload;
+
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @CreatedDate
+    @Column(name = "queued_at", updatable = false)
+    private LocalDateTime queuedAt;
 }
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import uk.co.visad.listener.InvoiceViewInvalidationListener;
 
 import java.time.LocalDateTime;
 
@@ -11,7 +12,7 @@ import java.time.LocalDateTime;
 @Table(name = "invoice_history", indexes = {
         @Index(name = "idx_invoice_history_record", columnList = "record_id, record_type")
 })
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({ AuditingEntityListener.class, InvoiceViewInvalidationListener.class })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -11,7 +11,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "package_pricing", indexes = {
-        @Index(name = "idx_package_name", columnList = "package_name", unique = true)
+        @Index(name = "idx_package_pricing_key", columnList = "package_name, country, visa_type", unique = true)
 })
 @EntityListeners(AuditingEntityListener.class)
 @Data
@@ -25,9 +25,18 @@ public class PackagePricing {
     @Column(columnDefinition = "INT")
     private Long id;
 
-    @Column(name = "package_name", nullable = false, length = 100, unique = true)
+    @Column(name = "package_name", nullable = false, length = 100)
     private String packageName;
 
+    // Empty = any country / any visa type; a non-empty value overrides the base price
+    @Column(nullable = false, length = 100)
+    @Builder.Default
+    private String country = "";
+
+    @Column(name = "visa_type", nullable = false, length = 100)
+    @Builder.Default
+    private String visaType = "";
+
     @Column(name = "package_code", length = 50)
     private String packageCode;
 
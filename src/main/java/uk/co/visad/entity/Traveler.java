@@ -5,6 +5,8 @@ import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import uk.co.visad.listener.InvoiceViewInvalidationListener;
+import uk.co.visad.listener.LockerTokenInvalidationListener;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -16,9 +18,11 @@ import java.util.List;
 @Table(name = "travelers", indexes = {
         @Index(name = "idx_travelers_passport", columnList = "passport_no"),
         @Index(name = "idx_travelers_email", columnList = "email"),
-        @Index(name = "idx_travelers_status", columnList = "status")
+        @Index(name = "idx_travelers_status", columnList = "status"),
+        @Index(name = "idx_travelers_created_id", columnList = "created_at, id")
 })
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({ AuditingEntityListener.class, InvoiceViewInvalidationListener.class,
+        LockerTokenInvalidationListener.class })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -9,7 +9,8 @@ import java.time.LocalDate;
 @Table(name = "traveler_questions", indexes = {
         @Index(name = "idx_tq_record", columnList = "record_id, record_type")
 })
-@EntityListeners(org.springframework.data.jpa.domain.support.AuditingEntityListener.class)
+@EntityListeners({ org.springframework.data.jpa.domain.support.AuditingEntityListener.class,
+        uk.co.visad.listener.LockerTokenInvalidationListener.class })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -7,7 +7,8 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "users")
-@EntityListeners(org.springframework.data.jpa.domain.support.AuditingEntityListener.class)
+@EntityListeners({ org.springframework.data.jpa.domain.support.AuditingEntityListener.class,
+        uk.co.visad.listener.UserPrincipalInvalidationListener.class })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,38 @@
+package uk.co.visad.listener;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import uk.co.visad.entity.Dependent;
+import uk.co.visad.entity.InvoiceHistory;
+import uk.co.visad.entity.Traveler;
+import uk.co.visad.service.InvoiceViewCache;
+
+/**
+ * JPA listener on Traveler, Dependent and InvoiceHistory that evicts the
+ * affected record's cached invoice view whenever one of them is written,
+ * so every save path (field edits, discounts, saveInvoice, locker edits,
+ * sent invoices) invalidates without having to remember to.
+ */
+@Component
+@RequiredArgsConstructor
+public class InvoiceViewInvalidationListener {
+
+    private final InvoiceViewCache invoiceViewCache;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        if (entity instanceof Traveler traveler) {
+            invoiceViewCache.invalidate(traveler.getId());
+        } else if (entity instanceof Dependent dependent && dependent.getTraveler() != null) {
+            invoiceViewCache.invalidate(dependent.getTraveler().getId());
+        } else if (entity instanceof InvoiceHistory history) {
+            // Invoice views read history by record id
+            invoiceViewCache.invalidate(history.getRecordId());
+        }
+    }
+}
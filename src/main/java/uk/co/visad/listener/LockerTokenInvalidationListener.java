@@ -0,0 +1,50 @@
+package uk.co.visad.listener;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import uk.co.visad.entity.Dependent;
+import uk.co.visad.entity.Traveler;
+import uk.co.visad.entity.TravelerQuestions;
+import uk.co.visad.service.LockerTokenResolver;
+
+/**
+ * JPA listener on Traveler, Dependent and TravelerQuestions that keeps
+ * LockerTokenResolver's cache in step with writes: regenerated tokens stop
+ * resolving, renames, new questions rows and lock changes are applied in
+ * place, and deleted records are evicted.
+ */
+@Component
+@RequiredArgsConstructor
+public class LockerTokenInvalidationListener {
+
+    private final LockerTokenResolver lockerTokenResolver;
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Object entity) {
+        if (entity instanceof Traveler traveler) {
+            lockerTokenResolver.onRecordSaved("traveler", traveler.getId(), traveler.getPublicUrlToken(),
+                    traveler.getFirstName(), traveler.getLastName());
+        } else if (entity instanceof Dependent dependent) {
+            lockerTokenResolver.onRecordSaved("dependent", dependent.getId(), dependent.getPublicUrlToken(),
+                    dependent.getFirstName(), dependent.getLastName());
+        } else if (entity instanceof TravelerQuestions questions) {
+            lockerTokenResolver.onQuestionsSaved(questions.getRecordType(), questions.getRecordId(),
+                    questions.getId(), Boolean.TRUE.equals(questions.getFormComplete()));
+        }
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        if (entity instanceof Traveler traveler) {
+            lockerTokenResolver.invalidate("traveler", traveler.getId());
+        } else if (entity instanceof Dependent dependent) {
+            lockerTokenResolver.invalidate("dependent", dependent.getId());
+        } else if (entity instanceof TravelerQuestions questions) {
+            lockerTokenResolver.invalidate(questions.getRecordType(), questions.getRecordId());
+        }
+    }
+}
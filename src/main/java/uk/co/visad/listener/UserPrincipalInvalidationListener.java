@@ -0,0 +1,26 @@
+package uk.co.visad.listener;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import uk.co.visad.entity.User;
+import uk.co.visad.security.JwtPrincipalCache;
+
+/**
+ * JPA listener on User that evicts the user's cached JWT principals whenever
+ * the user is updated (role or password change) or deleted, so the next
+ * request re-reads the users table.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserPrincipalInvalidationListener {
+
+    private final JwtPrincipalCache jwtPrincipalCache;
+
+    @PostUpdate
+    @PostRemove
+    public void onChange(User user) {
+        jwtPrincipalCache.invalidateUser(user.getId());
+    }
+}
@@ -0,0 +1,95 @@
+package uk.co.visad.model.presence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashed timer wheel for session heartbeat expiry.
+ *
+ * Each session sits in the slot of its deadline tick. Re-arming on heartbeat
+ * moves it to a new slot in O(1), and advancing the wheel only touches the
+ * slots whose tick has passed, so expiry costs O(expired) instead of a scan
+ * over every session.
+ *
+ * The timeout must be shorter than one full turn of the wheel (slots * tick).
+ */
+public class SessionExpiryWheel {
+
+    private final long tickMillis;
+    private final long timeoutTicks;
+    private final List<Set<String>> slots;
+
+    // Key: SessionId, Value: deadline tick
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+
+    private long lastProcessedTick;
+
+    public SessionExpiryWheel(int slotCount, long tickMillis, long timeoutMillis) {
+        this.tickMillis = tickMillis;
+        this.timeoutTicks = Math.max(1, timeoutMillis / tickMillis);
+        if (timeoutTicks >= slotCount) {
+            throw new IllegalArgumentException("Timeout must be shorter than one wheel rotation");
+        }
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(ConcurrentHashMap.newKeySet());
+        }
+        this.lastProcessedTick = currentTick(System.currentTimeMillis());
+    }
+
+    /**
+     * Schedules (or re-schedules) expiry of the session one timeout from now.
+     */
+    public void arm(String sessionId, long nowMillis) {
+        long deadline = currentTick(nowMillis) + timeoutTicks;
+        Long previous = deadlines.put(sessionId, deadline);
+        if (previous != null && previous != deadline) {
+            slotFor(previous).remove(sessionId);
+        }
+        slotFor(deadline).add(sessionId);
+    }
+
+    public void disarm(String sessionId) {
+        Long previous = deadlines.remove(sessionId);
+        if (previous != null) {
+            slotFor(previous).remove(sessionId);
+        }
+    }
+
+    /**
+     * Advances the wheel to the given time and returns the sessions whose deadline passed.
+     */
+    public synchronized List<String> advance(long nowMillis) {
+        long now = currentTick(nowMillis);
+        List<String> expired = new ArrayList<>();
+        // After a long stall, visiting each slot once is enough
+        long from = Math.max(lastProcessedTick + 1, now - slots.size() + 1);
+        for (long tick = from; tick <= now; tick++) {
+            Set<String> slot = slotFor(tick);
+            for (String sessionId : slot) {
+                Long deadline = deadlines.get(sessionId);
+                if (deadline != null && deadline <= now && deadlines.remove(sessionId, deadline)) {
+                    slot.remove(sessionId);
+                    expired.add(sessionId);
+                }
+            }
+        }
+        lastProcessedTick = Math.max(lastProcessedTick, now);
+        return expired;
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+
+    private long currentTick(long millis) {
+        return millis / tickMillis;
+    }
+
+    private Set<String> slotFor(long tick) {
+        return slots.get((int) Math.floorMod(tick, (long) slots.size()));
+    }
+}
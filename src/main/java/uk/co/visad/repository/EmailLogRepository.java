@@ -10,4 +10,6 @@ import java.util.List;
 public interface EmailLogRepository extends JpaRepository<EmailLog, Long> {
 
     List<EmailLog> findByRecordIdAndRecordTypeOrderBySentAtDesc(Long recordId, String recordType);
+
+    List<EmailLog> findByClaimTokenAndStatus(String claimToken, String status);
 }
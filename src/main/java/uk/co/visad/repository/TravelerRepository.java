@@ -2,6 +2,7 @@ package uk.co.visad.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -9,6 +10,7 @@ import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.stereotype.Repository;
 import uk.co.visad.entity.Traveler;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -45,11 +47,10 @@ public interface TravelerRepository extends JpaRepository<Traveler, Long> {
                      "t.passportNo LIKE CONCAT('%', :search, '%')")
        List<Traveler> searchByNameOrPassport(@Param("search") String search);
 
-       // Find travelers without generated invoice
-       // DISABLED: invoiceGenerated field doesn't exist in production DB
-       // @Query("SELECT t FROM Traveler t WHERE t.invoiceGenerated IS NULL OR
-       // t.invoiceGenerated = false")
-       // List<Traveler> findWithoutInvoice();
+       // Travelers without a saved invoice, in id order after the given id (chunked batch)
+       @Query("SELECT t FROM Traveler t WHERE t.id > :afterId " +
+                     "AND (t.invoiceGenerated IS NULL OR t.invoiceGenerated = false) ORDER BY t.id")
+       List<Traveler> findWithoutInvoiceAfter(@Param("afterId") Long afterId, Pageable pageable);
 
        // Count travelers by status
        long countByStatus(String status);
@@ -61,4 +62,38 @@ public interface TravelerRepository extends JpaRepository<Traveler, Long> {
        // Optimized projection for dashboard
        @Query("SELECT t FROM Traveler t ORDER BY t.id DESC")
        Page<TravelerSummaryProjection> findAllProjectedBy(Pageable pageable);
+
+       // Keyset (seek) pagination: first slice, no count query
+       @Query("SELECT t FROM Traveler t")
+       Slice<Traveler> findSliceBy(Pageable pageable);
+
+       // Keyset (seek) pagination, phase 1: rows with a createdAt, in (createdAt, id) DESC order
+       @Query("SELECT t FROM Traveler t WHERE t.createdAt IS NOT NULL")
+       Slice<Traveler> findDatedSliceBy(Pageable pageable);
+
+       // Keyset (seek) pagination: dated rows strictly after (createdAt, id) in DESC order
+       @Query("SELECT t FROM Traveler t WHERE t.createdAt < :createdAt " +
+                     "OR (t.createdAt = :createdAt AND t.id < :id)")
+       Slice<Traveler> findSliceAfter(@Param("createdAt") LocalDateTime createdAt,
+                     @Param("id") Long id, Pageable pageable);
+
+       // Keyset (seek) pagination, phase 2: rows without a createdAt, in id DESC order after :id
+       @Query("SELECT t FROM Traveler t WHERE t.createdAt IS NULL AND t.id < :id")
+       Slice<Traveler> findUndatedSliceAfter(@Param("id") Long id, Pageable pageable);
+
+       @Query("SELECT t FROM Traveler t")
+       Slice<TravelerSummaryProjection> findProjectedSliceBy(Pageable pageable);
+
+       @Query("SELECT t FROM Traveler t WHERE t.createdAt IS NOT NULL")
+       Slice<TravelerSummaryProjection> findProjectedDatedSliceBy(Pageable pageable);
+
+       @Query("SELECT t FROM Traveler t WHERE t.createdAt < :createdAt " +
+                     "OR (t.createdAt = :createdAt AND t.id < :id)")
+       Slice<TravelerSummaryProjection> findProjectedSliceAfter(@Param("createdAt") LocalDateTime createdAt,
+                     @Param("id") Long id, Pageable pageable);
+
+       @Query("SELECT t FROM Traveler t WHERE t.createdAt IS NULL AND t.id < :id")
+       Slice<TravelerSummaryProjection> findProjectedUndatedSliceAfter(@Param("id") Long id, Pageable pageable);
+
+       boolean existsByCreatedAtIsNull();
 }
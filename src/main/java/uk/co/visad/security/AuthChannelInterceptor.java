@@ -1,27 +1,74 @@
 package uk.co.visad.security;
 
+import io.jsonwebtoken.Claims;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticates STOMP CONNECT frames from the Authorization native header.
+ *
+ * Principals come from the JwtPrincipalCache shared with the HTTP filter, so a
+ * reconnect only costs a signature check. Users table lookups on cache misses
+ * (e.g. every browser reconnecting after a deploy) are limited to
+ * app.websocket.connect.max-concurrent at a time; a CONNECT that cannot get a
+ * slot within acquire-timeout-ms is refused with an ERROR frame carrying a
+ * jittered retry-after-ms header (see StompConnectErrorHandler), so clients
+ * spread their retries out instead of returning together.
+ */
 @Component
+@Slf4j
 public class AuthChannelInterceptor implements ChannelInterceptor {
 
     private final JwtUtils jwtUtils;
     private final CustomUserDetailsService userDetailsService;
+    private final JwtPrincipalCache jwtPrincipalCache;
+    private final Semaphore lookups;
+
+    @Value("${app.websocket.connect.acquire-timeout-ms:200}")
+    private long acquireTimeoutMs;
+
+    @Value("${app.websocket.connect.retry-base-ms:1000}")
+    private long retryBaseMs;
+
+    @Value("${app.websocket.connect.retry-jitter-ms:5000}")
+    private long retryJitterMs;
 
-    public AuthChannelInterceptor(JwtUtils jwtUtils, CustomUserDetailsService userDetailsService) {
+    public AuthChannelInterceptor(JwtUtils jwtUtils, CustomUserDetailsService userDetailsService,
+                                  JwtPrincipalCache jwtPrincipalCache,
+                                  @Value("${app.websocket.connect.max-concurrent:16}") int maxConcurrent) {
         this.jwtUtils = jwtUtils;
         this.userDetailsService = userDetailsService;
+        this.jwtPrincipalCache = jwtPrincipalCache;
+        this.lookups = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * A CONNECT refused because too many are being authenticated at once.
+     */
+    @Getter
+    public static class ConnectThrottledException extends MessagingException {
+        private final long retryAfterMs;
+
+        public ConnectThrottledException(long retryAfterMs) {
+            super("Server busy, retry in " + retryAfterMs + " ms");
+            this.retryAfterMs = retryAfterMs;
+        }
     }
 
     @Override
@@ -32,11 +79,14 @@ public class AuthChannelInterceptor implements ChannelInterceptor {
             String authHeader = accessor.getFirstNativeHeader("Authorization");
             if (StringUtils.hasText(authHeader) && authHeader.startsWith("Bearer ")) {
                 String token = authHeader.substring(7);
-                if (jwtUtils.validateJwtToken(token)) {
-                    String username = jwtUtils.getUsernameFromJwtToken(token);
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                Claims claims = jwtUtils.parseValidClaims(token);
+                if (claims != null) {
+                    UserPrincipal principal = jwtPrincipalCache.get(token);
+                    if (principal == null) {
+                        principal = loadAdmitted(token, claims.getSubject());
+                    }
                     UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                            userDetails, null, userDetails.getAuthorities());
+                            principal, null, principal.getAuthorities());
                     
                     // Set the user for the WebSocket session
                     accessor.setUser(authentication);
@@ -48,4 +98,24 @@ public class AuthChannelInterceptor implements ChannelInterceptor {
         }
         return message;
     }
+
+    private UserPrincipal loadAdmitted(String token, String username) {
+        boolean acquired = false;
+        try {
+            acquired = lookups.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!acquired) {
+            long retryAfterMs = retryBaseMs + ThreadLocalRandom.current().nextLong(retryJitterMs + 1);
+            log.warn("STOMP CONNECT throttled for {}, retry in {} ms", username, retryAfterMs);
+            throw new ConnectThrottledException(retryAfterMs);
+        }
+        try {
+            return jwtPrincipalCache.get(token,
+                    () -> (UserPrincipal) userDetailsService.loadUserByUsername(username));
+        } finally {
+            lookups.release();
+        }
+    }
 }
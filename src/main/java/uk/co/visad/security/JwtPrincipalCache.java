@@ -0,0 +1,83 @@
+package uk.co.visad.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Principals resolved from JWTs, keyed by a SHA-256 hash of the token so raw
+ * tokens are never held in memory.
+ *
+ * Shared by the HTTP filter and STOMP CONNECT. Callers still verify the token's
+ * signature and expiry on every use; the cache only saves the users lookup. Entries are bounded by
+ * app.jwt.principal-cache.max-size and expire after ttl-ms, and every token of
+ * a user is evicted when that user is updated or deleted
+ * (see UserPrincipalInvalidationListener).
+ */
+@Component
+public class JwtPrincipalCache {
+
+    private final Cache<String, UserPrincipal> cache;
+
+    public JwtPrincipalCache(@Value("${app.jwt.principal-cache.max-size:10000}") long maxSize,
+                             @Value("${app.jwt.principal-cache.ttl-ms:300000}") long ttlMs) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    public UserPrincipal get(String token) {
+        return cache.getIfPresent(hash(token));
+    }
+
+    /**
+     * Returns the cached principal or loads it; concurrent misses for the same
+     * token share one load (e.g. several tabs reconnecting at once).
+     */
+    public UserPrincipal get(String token, Supplier<UserPrincipal> loader) {
+        return cache.get(hash(token), key -> loader.get());
+    }
+
+    /**
+     * Evicts every cached token of the user now and again after the surrounding
+     * transaction completes, so a principal reloaded mid-transaction is not kept.
+     */
+    public void invalidateUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long userId) {
+        cache.asMap().values().removeIf(principal -> userId.equals(principal.getId()));
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package uk.co.visad.security;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
@@ -21,8 +22,14 @@ public class JwtUtils {
     @Value("${app.jwt.expiration-ms}")
     private long jwtExpirationMs;
 
-    private SecretKey key() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+    // Built once: decoding the secret and building the parser on every call is wasted work
+    private SecretKey key;
+    private JwtParser parser;
+
+    @PostConstruct
+    public void init() {
+        key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        parser = Jwts.parser().verifyWith(key).build();
     }
 
     public String generateJwtToken(Authentication authentication) {
@@ -34,7 +41,7 @@ public class JwtUtils {
                 .claim("role", userPrincipal.getRole())
                 .issuedAt(new Date())
                 .expiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(key())
+                .signWith(key)
                 .compact();
     }
 
@@ -45,41 +52,36 @@ public class JwtUtils {
                 .claim("role", role)
                 .issuedAt(new Date())
                 .expiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(key())
+                .signWith(key)
                 .compact();
     }
 
     public String getUsernameFromJwtToken(String token) {
-        return Jwts.parser()
-                .verifyWith(key())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+        return parser.parseSignedClaims(token).getPayload().getSubject();
     }
 
     public Long getUserIdFromJwtToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(key())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        Claims claims = parser.parseSignedClaims(token).getPayload();
         return claims.get("userId", Long.class);
     }
 
     public String getRoleFromJwtToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(key())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        Claims claims = parser.parseSignedClaims(token).getPayload();
         return claims.get("role", String.class);
     }
 
     public boolean validateJwtToken(String authToken) {
+        return parseValidClaims(authToken) != null;
+    }
+
+    /**
+     * Verifies the token and returns its claims in one parse.
+     *
+     * @return the claims, or null if the token is invalid or expired
+     */
+    public Claims parseValidClaims(String authToken) {
         try {
-            Jwts.parser().verifyWith(key()).build().parseSignedClaims(authToken);
-            return true;
+            return parser.parseSignedClaims(authToken).getPayload();
         } catch (MalformedJwtException e) {
             log.error("Invalid JWT token: {}", e.getMessage());
         } catch (ExpiredJwtException e) {
@@ -88,7 +90,9 @@ public class JwtUtils {
             log.error("JWT token is unsupported: {}", e.getMessage());
         } catch (IllegalArgumentException e) {
             log.error("JWT claims string is empty: {}", e.getMessage());
+        } catch (JwtException e) {
+            log.error("JWT signature is invalid: {}", e.getMessage());
         }
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,30 @@
+package uk.co.visad.security;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.StompSubProtocolErrorHandler;
+
+/**
+ * Turns a throttled CONNECT into an ERROR frame with a retry-after-ms header,
+ * which clients use as their reconnect delay. Other errors are handled as usual.
+ */
+@Component
+public class StompConnectErrorHandler extends StompSubProtocolErrorHandler {
+
+    @Override
+    public Message<byte[]> handleClientMessageProcessingError(Message<byte[]> clientMessage, Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AuthChannelInterceptor.ConnectThrottledException throttled) {
+                StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+                accessor.setMessage(throttled.getMessage());
+                accessor.setNativeHeader("retry-after-ms", String.valueOf(throttled.getRetryAfterMs()));
+                accessor.setLeaveMutable(true);
+                return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+            }
+        }
+        return super.handleClientMessageProcessingError(clientMessage, ex);
+    }
+}
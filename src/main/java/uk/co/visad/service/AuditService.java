@@ -1,23 +1,105 @@
 package uk.co.visad.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import uk.co.visad.entity.AuditLog;
 import uk.co.visad.repository.AuditLogRepository;
 import uk.co.visad.security.UserPrincipal;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Audit trail writer.
+ *
+ * Entries are queued after the caller's transaction commits and a single
+ * background thread drains them into multi-row JDBC batch INSERTs, so field
+ * edits never wait on audit_logs. The queue is bounded: when it is full the
+ * caller writes its own entries synchronously (caller-runs back-pressure)
+ * instead of dropping them. A batch the database rejects is retried row by
+ * row, so only entries that fail on their own are lost (and logged). Pending
+ * entries are flushed on shutdown.
+ */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class AuditService {
 
+    private static final String INSERT_SQL = "INSERT INTO audit_logs " +
+            "(user_id, username, record_type, record_id, record_name, field_changed, old_value, new_value, timestamp) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private final AuditLogRepository auditLogRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.audit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.audit.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.audit.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<AuditLog> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    // Own transaction per write: callers may be in an afterCommit callback or have none at all
+    private TransactionTemplate writeTemplate;
+
+    @PostConstruct
+    public void start() {
+        writeTemplate = new TransactionTemplate(transactionManager);
+        writeTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::drainLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever the writer did not get to is written on the shutdown thread
+        List<AuditLog> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("Flushing {} pending audit entries on shutdown", remaining.size());
+            writeBatch(remaining);
+        }
+    }
 
-    @Transactional
     public void logChange(String recordType, Long recordId, String recordName,
                           String fieldChanged, String oldValue, String newValue) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
@@ -30,38 +112,153 @@ public class AuditService {
             username = principal.getUsername();
         }
 
-        AuditLog log = AuditLog.builder()
-                .userId(userId)
-                .username(username)
-                .recordType(recordType)
-                .recordId(recordId)
-                .recordName(recordName)
-                .fieldChanged(fieldChanged)
-                .oldValue(oldValue)
-                .newValue(newValue)
-                .build();
-
-        auditLogRepository.save(log);
+        enqueue(List.of(build(userId, username, recordType, recordId, recordName, fieldChanged, oldValue,
+                newValue)));
     }
 
     public void logChange(Long userId, String username, String recordType, Long recordId,
                           String recordName, String fieldChanged, String oldValue, String newValue) {
-        AuditLog log = AuditLog.builder()
-                .userId(userId)
-                .username(username)
-                .recordType(recordType)
-                .recordId(recordId)
-                .recordName(recordName)
-                .fieldChanged(fieldChanged)
-                .oldValue(oldValue)
-                .newValue(newValue)
-                .build();
-
-        auditLogRepository.save(log);
+        enqueue(List.of(build(userId, username, recordType, recordId, recordName, fieldChanged, oldValue,
+                newValue)));
+    }
+
+    /**
+     * Writes all field changes of one record in a single batch.
+     */
+    public void logChanges(String recordType, Long recordId, String recordName, List<FieldChange> changes) {
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        Long userId = null;
+        String username = "system";
+
+        if (auth != null && auth.getPrincipal() instanceof UserPrincipal) {
+            UserPrincipal principal = (UserPrincipal) auth.getPrincipal();
+            userId = principal.getId();
+            username = principal.getUsername();
+        }
+
+        List<AuditLog> logs = new ArrayList<>(changes.size());
+        for (FieldChange change : changes) {
+            logs.add(build(userId, username, recordType, recordId, recordName, change.field(),
+                    change.oldValue(), change.newValue()));
+        }
+
+        enqueue(logs);
     }
 
     @Transactional(readOnly = true)
     public List<AuditLog> getLogsByRecord(Long recordId, String recordType) {
         return auditLogRepository.findByRecordIdAndRecordTypeOrderByTimestampDesc(recordId, recordType);
     }
+
+    private AuditLog build(Long userId, String username, String recordType, Long recordId, String recordName,
+                           String fieldChanged, String oldValue, String newValue) {
+        AuditLog entry = AuditLog.create(userId, username, recordType, recordId, recordName,
+                fieldChanged, oldValue, newValue);
+        // Stamped now: JDBC inserts bypass the JPA auditing listener
+        entry.setTimestamp(LocalDateTime.now());
+        return entry;
+    }
+
+    private void enqueue(List<AuditLog> entries) {
+        // Only audit changes that actually committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    offerAll(entries);
+                }
+            });
+        } else {
+            offerAll(entries);
+        }
+    }
+
+    private void offerAll(List<AuditLog> entries) {
+        List<AuditLog> overflow = null;
+        for (AuditLog entry : entries) {
+            boolean accepted = false;
+            if (running) {
+                try {
+                    accepted = queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!accepted) {
+                if (overflow == null) {
+                    overflow = new ArrayList<>();
+                }
+                overflow.add(entry);
+            }
+        }
+        if (overflow != null) {
+            // Back-pressure: queue full (or shutting down) — the caller pays for its own write
+            log.warn("Audit queue full, writing {} entries synchronously", overflow.size());
+            writeBatch(overflow);
+        }
+    }
+
+    private void drainLoop() {
+        List<AuditLog> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                AuditLog first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<AuditLog> batch) {
+        try {
+            // One transaction for the whole list, so a failed chunk also rolls back the
+            // chunks before it and the row-by-row retry cannot insert them twice
+            writeTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, batch, batchSize, AuditService::bind));
+        } catch (Exception e) {
+            // One bad row fails the whole batch: retry row by row so only that row is lost
+            log.warn("Audit batch write failed, retrying {} entries individually: {}", batch.size(), e.getMessage());
+            for (AuditLog entry : batch) {
+                try {
+                    writeTemplate.executeWithoutResult(status ->
+                            jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, entry)));
+                } catch (Exception rowError) {
+                    log.error("Failed to write audit entry: {} {} {}", entry.getRecordType(), entry.getRecordId(),
+                            entry.getFieldChanged(), rowError);
+                }
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, AuditLog entry) throws SQLException {
+        if (entry.getUserId() != null) {
+            ps.setLong(1, entry.getUserId());
+        } else {
+            ps.setNull(1, Types.INTEGER);
+        }
+        ps.setString(2, entry.getUsername());
+        ps.setString(3, entry.getRecordType());
+        ps.setLong(4, entry.getRecordId());
+        ps.setString(5, entry.getRecordName());
+        ps.setString(6, entry.getFieldChanged());
+        ps.setString(7, entry.getOldValue());
+        ps.setString(8, entry.getNewValue());
+        ps.setTimestamp(9, Timestamp.valueOf(entry.getTimestamp()));
+    }
+
+    public record FieldChange(String field, String oldValue, String newValue) {
+    }
 }
@@ -0,0 +1,254 @@
+package uk.co.visad.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.co.visad.util.FileEncryptionUtil;
+import uk.co.visad.util.NamedFileSystemResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Content-addressed, reference-counted store for uploaded files.
+ *
+ * Each distinct file body is stored once under uploadRoot/blobs/ab/cd/SHA256
+ * (encrypted when encryption is enabled). Callers keep their existing keys
+ * (locker "YYYY/MM/name", vault "documents/name"); file_refs maps each key to
+ * a blob and file_blobs counts the references. Uploading a duplicate adds a
+ * reference without writing or re-encrypting anything, and the blob is only
+ * deleted when its last reference is released. Store and release join the
+ * caller's transaction; a released blob's file is deleted after that
+ * transaction commits, so a rollback leaves both the rows and the file.
+ */
+@Service
+@Slf4j
+public class BlobStoreService {
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate cleanupTemplate;
+
+    @Value("${app.upload.root:/home/VisaD/visad.co.uk/vault_uploads}")
+    private String uploadRoot;
+
+    @Autowired(required = false)
+    private FileEncryptionUtil encryptionUtil;
+
+    public BlobStoreService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // afterCommit callbacks cannot join the transaction that just completed
+        this.cleanupTemplate = new TransactionTemplate(transactionManager);
+        this.cleanupTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Stores the content under the given key, reusing an existing blob with the same SHA-256.
+     */
+    public void store(String refKey, InputStreamSource source) throws IOException {
+        String sha256 = hash(source);
+        Path blob = blobPath(sha256);
+
+        // Existing blob: add a reference (row lock held until commit blocks a concurrent release)
+        Boolean reused = transactionTemplate.execute(status -> {
+            int updated = jdbcTemplate.update(
+                    "UPDATE file_blobs SET ref_count = ref_count + 1 WHERE sha256 = ?", sha256);
+            if (updated == 0) {
+                return false;
+            }
+            if (!Files.exists(blob)) {
+                // Row outlived its file (e.g. failed delete); write it back under the lock
+                writeBlobUnchecked(source, blob);
+            }
+            insertRef(refKey, sha256);
+            return true;
+        });
+        if (Boolean.TRUE.equals(reused)) {
+            log.info("Deduplicated upload {} -> blob {}", refKey, sha256);
+            return;
+        }
+
+        writeBlob(source, blob);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO file_blobs (sha256, size, ref_count) VALUES (?, ?, 1) " +
+                    "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1", sha256, sizeOf(blob));
+            if (!Files.exists(blob)) {
+                // A release that committed meanwhile deleted it; write it back under the lock
+                writeBlobUnchecked(source, blob);
+            }
+            insertRef(refKey, sha256);
+        });
+        log.info("Stored new blob {} for {}", sha256, refKey);
+    }
+
+    /**
+     * Opens the blob referenced by the key, or empty if the key is not in the store
+     * (files saved before deduplication live at their original path). The resource
+     * reports the given filename, not the blob's hash.
+     */
+    public Optional<Resource> open(String refKey, String filename) throws IOException {
+        List<String> found = jdbcTemplate.queryForList(
+                "SELECT sha256 FROM file_refs WHERE ref_key = ?", String.class, refKey);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        Path blob = blobPath(found.get(0));
+        if (!Files.exists(blob)) {
+            throw new IOException("Blob missing for " + refKey);
+        }
+        if (encryptionUtil == null) {
+            return Optional.of(new NamedFileSystemResource(blob, filename));
+        }
+        try {
+            return Optional.of(encryptionUtil.toDownloadResource(blob, filename));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt file: " + filename, e);
+        }
+    }
+
+    /**
+     * Drops the key's reference and deletes the blob once nothing references it.
+     *
+     * @return false if the key is not in the store
+     */
+    public boolean release(String refKey) {
+        Boolean released = transactionTemplate.execute(status -> {
+            List<String> found = jdbcTemplate.queryForList(
+                    "SELECT sha256 FROM file_refs WHERE ref_key = ?", String.class, refKey);
+            if (found.isEmpty()) {
+                return false;
+            }
+            String sha256 = found.get(0);
+            jdbcTemplate.update("DELETE FROM file_refs WHERE ref_key = ?", refKey);
+
+            Integer refCount = jdbcTemplate.queryForObject(
+                    "SELECT ref_count FROM file_blobs WHERE sha256 = ? FOR UPDATE", Integer.class, sha256);
+            if (refCount != null && refCount > 1) {
+                jdbcTemplate.update("UPDATE file_blobs SET ref_count = ref_count - 1 WHERE sha256 = ?", sha256);
+                return true;
+            }
+            jdbcTemplate.update("DELETE FROM file_blobs WHERE sha256 = ?", sha256);
+            // The file goes only once the caller commits: on rollback the references come back
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteIfUnreferenced(sha256);
+                }
+            });
+            return true;
+        });
+        return Boolean.TRUE.equals(released);
+    }
+
+    /**
+     * Deletes a released blob's file unless a store() has added it back since.
+     * The lookup locks the row (or the gap it would go in), so a concurrent
+     * store() either is seen here or inserts afterwards and writes the file again.
+     */
+    private void deleteIfUnreferenced(String sha256) {
+        try {
+            cleanupTemplate.executeWithoutResult(status -> {
+                List<Integer> row = jdbcTemplate.queryForList(
+                        "SELECT ref_count FROM file_blobs WHERE sha256 = ? FOR UPDATE", Integer.class, sha256);
+                if (!row.isEmpty()) {
+                    return;
+                }
+                try {
+                    Files.deleteIfExists(blobPath(sha256));
+                    log.info("Deleted unreferenced blob {}", sha256);
+                } catch (IOException e) {
+                    log.error("Failed to delete blob {}", sha256, e);
+                }
+            });
+        } catch (Exception e) {
+            // The release has committed; a leftover file only costs disk space
+            log.error("Failed to delete blob {}", sha256, e);
+        }
+    }
+
+    // --- Helpers ---
+
+    private void insertRef(String refKey, String sha256) {
+        jdbcTemplate.update("INSERT INTO file_refs (ref_key, sha256) VALUES (?, ?)", refKey, sha256);
+    }
+
+    private Path blobPath(String sha256) {
+        return Paths.get(uploadRoot, "blobs", sha256.substring(0, 2), sha256.substring(2, 4), sha256);
+    }
+
+    private static String hash(InputStreamSource source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = source.getInputStream()) {
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Writes the blob via a temp file so readers never see a partial blob.
+     */
+    private void writeBlob(InputStreamSource source, Path blob) throws IOException {
+        Files.createDirectories(blob.getParent());
+        Path tmp = blob.resolveSibling(blob.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try (InputStream in = source.getInputStream()) {
+            if (encryptionUtil != null) {
+                encryptionUtil.encrypt(in, tmp);
+            } else {
+                Files.copy(in, tmp);
+            }
+            Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt file", e);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void writeBlobUnchecked(InputStreamSource source, Path blob) {
+        try {
+            writeBlob(source, blob);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    private static long sizeOf(Path blob) {
+        try {
+            return Files.size(blob);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package uk.co.visad.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers outgoing STOMP broadcasts per destination for a short window and
+ * sends them as one frame.
+ *
+ * Events with the same coalesce key (e.g. traveler + field, or user + session)
+ * replace each other inside a window, so only the latest value goes out.
+ * A window holding a single event sends it unchanged; otherwise clients get
+ * {"type":"BATCH","events":[...]} with events ordered oldest to newest.
+ */
+@Component
+@Slf4j
+public class CoalescingBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong uniqueKeys = new AtomicLong();
+
+    @Value("${app.websocket.coalesce-window-ms:75}")
+    private long windowMs;
+
+    // Key: destination, Value: coalesce key -> latest payload (insertion order = recency)
+    private final Map<String, LinkedHashMap<String, Object>> pending = new HashMap<>();
+
+    public CoalescingBroadcaster(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "broadcast-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues a payload for the destination.
+     *
+     * @param coalesceKey events sharing a key within one window collapse to the latest;
+     *                    null means the event is never coalesced
+     */
+    public void send(String destination, String coalesceKey, Object payload) {
+        String key = coalesceKey != null ? coalesceKey : "#" + uniqueKeys.incrementAndGet();
+        synchronized (pending) {
+            LinkedHashMap<String, Object> buffer = pending.get(destination);
+            if (buffer == null) {
+                buffer = new LinkedHashMap<>();
+                pending.put(destination, buffer);
+                scheduler.schedule(() -> flush(destination), windowMs, TimeUnit.MILLISECONDS);
+            }
+            // Re-insert so the buffer stays ordered by most recent update
+            buffer.remove(key);
+            buffer.put(key, payload);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<String> destinations;
+        synchronized (pending) {
+            destinations = new ArrayList<>(pending.keySet());
+        }
+        destinations.forEach(this::flush);
+        scheduler.shutdownNow();
+    }
+
+    private void flush(String destination) {
+        List<Object> events;
+        synchronized (pending) {
+            LinkedHashMap<String, Object> buffer = pending.remove(destination);
+            if (buffer == null || buffer.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(buffer.values());
+        }
+        try {
+            if (events.size() == 1) {
+                messagingTemplate.convertAndSend(destination, events.get(0));
+            } else {
+                Map<String, Object> batch = new HashMap<>();
+                batch.put("type", "BATCH");
+                batch.put("events", events);
+                messagingTemplate.convertAndSend(destination, batch);
+            }
+        } catch (Exception e) {
+            log.error("Failed to broadcast {} events to {}", events.size(), destination, e);
+        }
+    }
+}
@@ -10,17 +10,14 @@ import uk.co.visad.dto.DependentDto;
 import uk.co.visad.entity.Dependent;
 import uk.co.visad.entity.Traveler;
 import uk.co.visad.entity.TravelerQuestions;
-import uk.co.visad.entity.VisaUrl;
 import uk.co.visad.exception.BadRequestException;
 import uk.co.visad.exception.ResourceNotFoundException;
 import uk.co.visad.repository.DependentRepository;
 import uk.co.visad.repository.TravelerQuestionsRepository;
 import uk.co.visad.repository.TravelerRepository;
-import uk.co.visad.repository.VisaUrlRepository;
 import uk.co.visad.security.UserPrincipal;
+import uk.co.visad.util.FieldAccessorRegistry;
 
-import java.lang.reflect.Field;
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -28,7 +25,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -40,7 +36,7 @@ public class DependentService {
     private final DependentRepository dependentRepository;
     private final TravelerRepository travelerRepository;
     private final TravelerQuestionsRepository travelerQuestionsRepository;
-    private final VisaUrlRepository visaUrlRepository;
+    private final VisaUrlService visaUrlService;
     private final AuditService auditService;
 
     private static final Set<String> ALLOWED_FIELDS = Set.of(
@@ -52,6 +48,10 @@ public class DependentService {
             "applicationFormLink", "applicationFormUsername", "applicationFormPassword", "title",
             "placeOfBirth", "countryOfBirth", "relationshipToMain");
 
+    private static final FieldAccessorRegistry<Dependent> DEPENDENT_ACCESSORS = FieldAccessorRegistry
+            .of(Dependent.class, Map.of("package", "packageType"))
+            .requireAll(ALLOWED_FIELDS);
+
     private static final Set<String> QUESTIONS_FIELDS = Set.of(
             // Occupation
             "occupationStatus", "occupationTitle", "companyName", "companyAddress1", "companyAddress2",
@@ -77,6 +77,10 @@ public class DependentService {
             // Progress
             "progressPercentage", "formComplete", "agreedToTerms");
 
+    private static final FieldAccessorRegistry<TravelerQuestions> QUESTIONS_ACCESSORS = FieldAccessorRegistry
+            .of(TravelerQuestions.class)
+            .requireAll(QUESTIONS_FIELDS);
+
     @Transactional
     public Long createDependent(Long travelerId) {
         Traveler traveler = travelerRepository.findById(travelerId)
@@ -308,27 +312,10 @@ public class DependentService {
             center = center.split(" - ")[0];
         }
 
-        String url = "";
-        String appFormUrl = "";
-
-        if (country != null && center != null && !center.isEmpty()) {
-            Optional<VisaUrl> specific = visaUrlRepository.findByCountryAndVisaCenter(country, center);
-            if (specific.isPresent()) {
-                url = specific.get().getUrl();
-                appFormUrl = specific.get().getApplicationFormUrl();
-            }
-        }
-
-        if (url.isEmpty() && country != null) {
-            Optional<VisaUrl> general = visaUrlRepository.findByCountryWithNoVisaCenter(country);
-            if (general.isPresent()) {
-                url = general.get().getUrl();
-                appFormUrl = general.get().getApplicationFormUrl();
-            }
-        }
-
-        dependent.setVisaLink(url);
-        dependent.setApplicationFormLink(appFormUrl);
+        // Specific match first, then the country's general link (preloaded table, no query)
+        VisaUrlService.VisaLink link = visaUrlService.findLink(country, center);
+        dependent.setVisaLink(link.url());
+        dependent.setApplicationFormLink(link.applicationFormUrl());
         dependentRepository.save(dependent);
     }
 
@@ -569,53 +556,20 @@ public class DependentService {
     }
 
     private String getFieldValue(Dependent dependent, String fieldName) {
-        try {
-            Field field = Dependent.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            Object value = field.get(dependent);
-            return value != null ? value.toString() : "";
-        } catch (Exception e) {
-            return "";
-        }
+        String value = DEPENDENT_ACCESSORS.getAsString(dependent, fieldName);
+        return value != null ? value : "";
     }
 
     private void setFieldValue(Dependent dependent, String fieldName, String value) {
         try {
-            Field field = Dependent.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            Class<?> type = field.getType();
-
-            if (type == String.class) {
-                field.set(dependent, value);
-            } else if (type == LocalDate.class) {
-                field.set(dependent, parseDate(value));
-            } else if (type == Boolean.class || type == boolean.class) {
-                field.set(dependent, Boolean.parseBoolean(value) || "1".equals(value));
-            } else if (type == BigDecimal.class) {
-                field.set(dependent, value != null && !value.isEmpty() ? new BigDecimal(value) : null);
-            }
-        } catch (NoSuchFieldException e) {
-            if ("package".equals(fieldName)) {
-                dependent.setPackageType(value);
-            }
-        } catch (Exception e) {
+            DEPENDENT_ACCESSORS.set(dependent, fieldName, value);
+        } catch (IllegalArgumentException e) {
             log.error("Error setting field {} to value {}: {}", fieldName, value, e.getMessage());
         }
     }
 
     private LocalDate parseDate(String value) {
-        if (value == null || value.isEmpty()) {
-            return null;
-        }
-        try {
-            if (value.contains("/")) {
-                return LocalDate.parse(value, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            } else {
-                return LocalDate.parse(value);
-            }
-        } catch (Exception e) {
-            return null;
-        }
+        return FieldAccessorRegistry.parseDate(value);
     }
 
     @Transactional
@@ -631,30 +585,18 @@ public class DependentService {
                     return newTq;
                 });
 
-        setObjectField(tq, javaField, value);
+        setQuestionField(tq, javaField, value);
         travelerQuestionsRepository.save(tq);
     }
 
-    private void setObjectField(Object target, String fieldName, String value) {
+    private void setQuestionField(TravelerQuestions tq, String fieldName, String value) {
         try {
-            Field field = target.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            Class<?> type = field.getType();
-
-            if (type == String.class) {
-                field.set(target, value);
-            } else if (type == LocalDate.class) {
-                field.set(target, parseDate(value));
-            } else if (type == Boolean.class || type == boolean.class) {
-                field.set(target, Boolean.parseBoolean(value) || "1".equals(value));
-            } else if (type == BigDecimal.class) {
-                field.set(target, value != null && !value.isEmpty() ? new BigDecimal(value) : null);
-            } else if (type == Integer.class || type == int.class) {
-                field.set(target, value != null && !value.isEmpty() ? Integer.parseInt(value) : null);
+            if (!QUESTIONS_ACCESSORS.set(tq, fieldName, value)) {
+                log.error("Error setting field {} on TravelerQuestions: unknown field", fieldName);
             }
-        } catch (Exception e) {
-            log.error("Error setting field {} on {} to value {}: {}", fieldName, target.getClass().getSimpleName(),
-                    value, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            log.error("Error setting field {} on TravelerQuestions to value {}: {}", fieldName, value,
+                    e.getMessage());
         }
     }
 }
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
@@ -14,7 +15,6 @@ import uk.co.visad.repository.DocumentRepository;
 import uk.co.visad.exception.ResourceNotFoundException;
 import uk.co.visad.exception.BadRequestException;
 import uk.co.visad.util.FileEncryptionUtil;
-import uk.co.visad.util.NamedByteArrayResource;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -23,6 +23,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
@@ -31,10 +32,11 @@ import java.util.UUID;
 public class DocumentService {
 
     private final DocumentRepository documentRepository;
+    private final BlobStoreService blobStoreService;
 
-    // All vault document uploads go to:  uploadRoot/documents/
-    // The DB stores the relative path "documents/UUID.ext" so the root can change
-    // without touching the database (just update VAULT_UPLOAD_ROOT env var).
+    // Vault documents are keyed "documents/UUID.ext"; new content lives in the blob store,
+    // older uploads at uploadRoot/documents/. The DB stores the relative key so the root can
+    // change without touching the database (just update VAULT_UPLOAD_ROOT env var).
     @Value("${app.upload.root:/home/VisaD/visad.co.uk/vault_uploads}")
     private String uploadRoot;
 
@@ -57,31 +59,16 @@ public class DocumentService {
             throw new BadRequestException("Failed to store empty file.");
         }
 
-        Path docsDir = Paths.get(uploadRoot, "documents");
-        if (!Files.exists(docsDir)) {
-            Files.createDirectories(docsDir);
-        }
-
         String originalFilename = file.getOriginalFilename();
         String extension = originalFilename != null && originalFilename.contains(".")
                 ? originalFilename.substring(originalFilename.lastIndexOf("."))
                 : "";
         String filename = UUID.randomUUID().toString() + extension;
-        Path filePath = docsDir.resolve(filename);
-
-        if (encryptionUtil != null) {
-            try {
-                byte[] encrypted = encryptionUtil.encrypt(file.getInputStream().readAllBytes());
-                Files.write(filePath, encrypted);
-            } catch (java.security.GeneralSecurityException e) {
-                throw new IOException("Failed to encrypt file", e);
-            }
-        } else {
-            Files.copy(file.getInputStream(), filePath);
-        }
 
         // Store relative path so the root can be changed via env var without a DB migration.
+        // The content itself goes to the deduplicating blob store under this key.
         String relativeFilePath = "documents/" + filename;
+        blobStoreService.store(relativeFilePath, file);
 
         Document document = Document.builder()
                 .recordId(recordId)
@@ -103,11 +90,14 @@ public class DocumentService {
         Document doc = documentRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Document not found"));
 
-        try {
-            Path filePath = Paths.get(uploadRoot).resolve(doc.getFilePath()).normalize();
-            Files.deleteIfExists(filePath);
-        } catch (IOException e) {
-            log.error("Could not delete file: {}", doc.getFilePath());
+        // Blob is only removed when no other upload references it
+        if (!blobStoreService.release(doc.getFilePath())) {
+            try {
+                Path filePath = Paths.get(uploadRoot).resolve(doc.getFilePath()).normalize();
+                Files.deleteIfExists(filePath);
+            } catch (IOException e) {
+                log.error("Could not delete file: {}", doc.getFilePath());
+            }
         }
 
         documentRepository.delete(doc);
@@ -118,23 +108,30 @@ public class DocumentService {
         Document doc = documentRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Document not found"));
         try {
+            String contentType = doc.getFileType() != null ? doc.getFileType() : "application/octet-stream";
+            String filename = doc.getOriginalFilename() != null ? doc.getOriginalFilename() : doc.getFilename();
+
+            Optional<Resource> blob = blobStoreService.open(doc.getFilePath(), filename);
+            if (blob.isPresent()) {
+                return new DocumentDownload(blob.get(), contentType, filename);
+            }
+
+            // Documents uploaded before deduplication live at their original path
             Path filePath = Paths.get(uploadRoot).resolve(doc.getFilePath()).normalize();
             if (!Files.exists(filePath) || !Files.isReadable(filePath)) {
                 throw new ResourceNotFoundException("File not found: " + doc.getOriginalFilename());
             }
-            String contentType = doc.getFileType() != null ? doc.getFileType() : "application/octet-stream";
-            String filename = doc.getOriginalFilename() != null ? doc.getOriginalFilename() : doc.getFilename();
 
-            byte[] bytes = Files.readAllBytes(filePath);
-            if (encryptionUtil != null && encryptionUtil.isEncrypted(bytes)) {
+            Resource resource;
+            if (encryptionUtil == null) {
+                resource = new FileSystemResource(filePath);
+            } else {
                 try {
-                    bytes = encryptionUtil.decrypt(bytes);
-                    log.info("Decrypted document for download: {}", filename);
+                    resource = encryptionUtil.toDownloadResource(filePath, filename);
                 } catch (java.security.GeneralSecurityException e) {
                     throw new IOException("Failed to decrypt file: " + filename, e);
                 }
             }
-            Resource resource = new NamedByteArrayResource(bytes, filename);
             return new DocumentDownload(resource, contentType, filename);
         } catch (MalformedURLException e) {
             throw new ResourceNotFoundException("File not found");
@@ -0,0 +1,356 @@
+package uk.co.visad.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.co.visad.dto.EmailInvoiceRequest;
+import uk.co.visad.entity.EmailLog;
+import uk.co.visad.exception.BadRequestException;
+import uk.co.visad.exception.ResourceNotFoundException;
+import uk.co.visad.repository.EmailLogRepository;
+import uk.co.visad.security.UserPrincipal;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Transactional outbox for invoice emails.
+ *
+ * The HTTP request only stores one email_log row per message (T-invoices: one
+ * per applicant) and returns. Worker threads claim due rows with a leased
+ * UPDATE, render the PDF once per invoice in the batch, and hand the whole
+ * batch to JavaMailSender in one call so it goes over a single SMTP
+ * connection. Failed messages are retried with exponential backoff up to
+ * app.email.outbox.max-attempts, then marked failed. A row whose worker died
+ * mid-send becomes claimable again when its lease expires.
+ */
+@Service
+@Slf4j
+public class EmailOutboxService {
+
+    private static final String CLAIM_SQL = "UPDATE email_log SET status = 'sending', claim_token = ?, " +
+            "next_attempt_at = ? WHERE status IN ('queued', 'sending') AND next_attempt_at <= ? " +
+            "ORDER BY id LIMIT ?";
+
+    // Outcomes only land while this worker still holds the claim; a lapsed lease may have a new owner
+    private static final String SENT_SQL = "UPDATE email_log SET status = 'sent', sent_at = ?, " +
+            "attempts = attempts + 1, claim_token = NULL, last_error = NULL " +
+            "WHERE id = ? AND claim_token = ? AND status = 'sending'";
+
+    private static final String FAILED_SQL = "UPDATE email_log SET status = ?, next_attempt_at = ?, " +
+            "attempts = attempts + 1, claim_token = NULL, last_error = ? " +
+            "WHERE id = ? AND claim_token = ? AND status = 'sending'";
+
+    private final EmailLogRepository emailLogRepository;
+    private final EmailService emailService;
+    private final JavaMailSender mailSender;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.email.outbox.workers:2}")
+    private int workers;
+
+    @Value("${app.email.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.email.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.email.outbox.backoff-ms:30000}")
+    private long backoffMs;
+
+    @Value("${app.email.outbox.poll-ms:5000}")
+    private long pollMs;
+
+    @Value("${app.email.outbox.lease-ms:300000}")
+    private long leaseMs;
+
+    private final Object wakeUp = new Object();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean running;
+
+    public EmailOutboxService(EmailLogRepository emailLogRepository, EmailService emailService,
+                              JavaMailSender mailSender, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager) {
+        this.emailLogRepository = emailLogRepository;
+        this.emailService = emailService;
+        this.mailSender = mailSender;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Serialized outbox job: the original request plus who this message goes to.
+     */
+    public record InvoiceJob(EmailInvoiceRequest request, List<String> to, String bcc,
+                             String greetingName, boolean paymentConfirmation) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 1; i <= workers; i++) {
+            Thread worker = new Thread(this::workLoop, "email-outbox-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workerThreads.add(worker);
+        }
+        log.info("Email outbox started with {} workers", workers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Queues the invoice email(s) and returns the outbox ids. Sending starts after commit.
+     */
+    public List<Long> enqueueInvoice(EmailInvoiceRequest request) {
+        List<InvoiceJob> jobs = new ArrayList<>();
+        boolean isTInvoice = emailService.isTInvoice(request);
+
+        if (isTInvoice && request.getApplicants() != null && !request.getApplicants().isEmpty()) {
+            // T-Invoice — one personalised email per applicant
+            for (EmailInvoiceRequest.ApplicantDto applicant : request.getApplicants()) {
+                if (applicant.getEmail() == null || applicant.getEmail().isBlank()) continue;
+                jobs.add(new InvoiceJob(request, List.of(applicant.getEmail()), emailService.tInvoiceBcc(),
+                        applicant.getName(), true));
+            }
+        } else {
+            // Regular invoice (or T-invoice without applicants) — one email to all recipients
+            List<String> to = request.getEmails() != null && !request.getEmails().isEmpty()
+                    ? request.getEmails()
+                    : request.getCustomerEmail() != null ? List.of(request.getCustomerEmail()) : List.of();
+            if (!to.isEmpty()) {
+                jobs.add(new InvoiceJob(request, to, request.getBcc(), request.getCustomerName(), false));
+            }
+        }
+        if (jobs.isEmpty()) {
+            throw new BadRequestException("No recipient email provided");
+        }
+
+        Long sentBy = currentUserId();
+        String subject = emailService.invoiceSubject(request);
+        LocalDateTime now = LocalDateTime.now();
+
+        List<EmailLog> rows = new ArrayList<>(jobs.size());
+        for (InvoiceJob job : jobs) {
+            rows.add(EmailLog.builder()
+                    .recordId(request.getRecordId())
+                    .recordType(request.getRecordType() != null ? request.getRecordType() : "traveler")
+                    .recipientEmail(truncate(job.to().get(0), 150))
+                    .sentBy(sentBy)
+                    .subject(truncate(subject, 255))
+                    .emailType(job.paymentConfirmation() ? "t-invoice" : "invoice")
+                    .payload(writePayload(job))
+                    .nextAttemptAt(now)
+                    .build());
+        }
+
+        List<Long> ids = transactionTemplate.execute(status -> {
+            List<Long> saved = new ArrayList<>();
+            emailLogRepository.saveAll(rows).forEach(row -> saved.add(row.getId()));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeWorkers();
+                }
+            });
+            return saved;
+        });
+        log.info("Queued {} invoice email(s) for invoice {}", rows.size(), request.getInvoiceNumber());
+        return ids;
+    }
+
+    public EmailLog getStatus(Long id) {
+        return emailLogRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Email job not found"));
+    }
+
+    // --- Worker ---
+
+    private void workLoop() {
+        while (running) {
+            try {
+                if (processBatch() == 0) {
+                    synchronized (wakeUp) {
+                        wakeUp.wait(pollMs);
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+            } catch (Exception e) {
+                log.error("Email outbox worker error", e);
+                sleepQuietly(pollMs);
+            }
+        }
+    }
+
+    /**
+     * Claims up to batch-size due rows and sends them; returns how many were claimed.
+     * Package-private so tests can drive the worker step by step.
+     */
+    int processBatch() {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        int claimed = jdbcTemplate.update(CLAIM_SQL, token,
+                Timestamp.valueOf(now.plusNanos(leaseMs * 1_000_000)), Timestamp.valueOf(now), batchSize);
+        if (claimed == 0) {
+            return 0;
+        }
+        List<EmailLog> rows = emailLogRepository.findByClaimTokenAndStatus(token, "sending");
+
+        // Render each distinct invoice once, even when it goes to several applicants
+        Map<String, byte[]> pdfs = new HashMap<>();
+        List<EmailLog> built = new ArrayList<>();
+        List<InvoiceJob> builtJobs = new ArrayList<>();
+        List<MimeMessage> messages = new ArrayList<>();
+        for (EmailLog row : rows) {
+            try {
+                InvoiceJob job = objectMapper.readValue(row.getPayload(), InvoiceJob.class);
+                String invoiceKey = objectMapper.writeValueAsString(job.request());
+                byte[] pdf = pdfs.computeIfAbsent(invoiceKey, k -> emailService.generateInvoicePdf(job.request()));
+                messages.add(emailService.buildInvoiceMessage(job.request(), job.to(), job.bcc(),
+                        job.greetingName(), job.paymentConfirmation(), pdf));
+                built.add(row);
+                builtJobs.add(job);
+            } catch (Exception e) {
+                recordFailure(row, e);
+            }
+        }
+
+        Map<Object, Exception> failed = Map.of();
+        if (!messages.isEmpty()) {
+            try {
+                // Varargs send: one SMTP connection for the whole batch
+                mailSender.send(messages.toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                failed = e.getFailedMessages().isEmpty() ? allFailed(messages, e) : e.getFailedMessages();
+            } catch (MailException e) {
+                failed = allFailed(messages, e);
+            }
+        }
+
+        for (int i = 0; i < built.size(); i++) {
+            Exception error = failed.get(messages.get(i));
+            if (error != null) {
+                recordFailure(built.get(i), error);
+            } else {
+                recordSuccess(built.get(i), builtJobs.get(i));
+            }
+        }
+        return claimed;
+    }
+
+    private void recordSuccess(EmailLog row, InvoiceJob job) {
+        int updated = jdbcTemplate.update(SENT_SQL, Timestamp.valueOf(LocalDateTime.now()),
+                row.getId(), row.getClaimToken());
+        if (updated == 0) {
+            log.warn("Invoice email {} to {} was sent after its lease lapsed; another worker owns it now " +
+                    "and its outcome is kept", row.getId(), job.to());
+            return;
+        }
+        emailService.logHistory(job.request().getRecordId(), job.request().getRecordType(),
+                row.getEmailType(), job.request().getInvoiceNumber(), job.to().get(0));
+        log.info("Invoice email {} sent to {}", row.getId(), job.to());
+    }
+
+    private void recordFailure(EmailLog row, Exception error) {
+        int attempts = row.getAttempts() + 1;
+        String status;
+        LocalDateTime nextAttemptAt = row.getNextAttemptAt();
+        long delay = 0;
+        if (attempts >= maxAttempts) {
+            status = "failed";
+        } else {
+            // Exponential backoff with jitter, capped at one hour
+            delay = Math.min(backoffMs << (attempts - 1), 3_600_000L);
+            delay += ThreadLocalRandom.current().nextLong(Math.max(1, delay / 5));
+            status = "queued";
+            nextAttemptAt = LocalDateTime.now().plusNanos(delay * 1_000_000);
+        }
+
+        int updated = jdbcTemplate.update(FAILED_SQL, status, Timestamp.valueOf(nextAttemptAt),
+                truncate(error.getMessage(), 500), row.getId(), row.getClaimToken());
+        if (updated == 0) {
+            log.warn("Invoice email {} to {} failed after its lease lapsed; another worker owns it now: {}",
+                    row.getId(), row.getRecipientEmail(), error.getMessage());
+        } else if ("failed".equals(status)) {
+            log.error("Invoice email {} to {} failed permanently after {} attempts",
+                    row.getId(), row.getRecipientEmail(), attempts, error);
+        } else {
+            log.warn("Invoice email {} to {} failed (attempt {}), retrying in {} ms: {}",
+                    row.getId(), row.getRecipientEmail(), attempts, delay, error.getMessage());
+        }
+    }
+
+    // --- Helpers ---
+
+    private void wakeWorkers() {
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    private static Map<Object, Exception> allFailed(List<MimeMessage> messages, Exception e) {
+        Map<Object, Exception> failed = new HashMap<>();
+        messages.forEach(message -> failed.put(message, e));
+        return failed;
+    }
+
+    private String writePayload(InvoiceJob job) {
+        try {
+            return objectMapper.writeValueAsString(job);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize email job", e);
+        }
+    }
+
+    private static Long currentUserId() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getPrincipal() instanceof UserPrincipal) {
+            return ((UserPrincipal) auth.getPrincipal()).getId();
+        }
+        return null;
+    }
+
+    private static String truncate(String value, int max) {
+        return value != null && value.length() > max ? value.substring(0, max) : value;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
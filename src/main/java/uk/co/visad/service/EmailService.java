@@ -1,6 +1,5 @@
 package uk.co.visad.service;
 
-import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.util.ByteArrayDataSource;
@@ -14,7 +13,6 @@ import uk.co.visad.dto.VerificationEmailRequest;
 import uk.co.visad.entity.InvoiceHistory;
 import uk.co.visad.repository.InvoiceHistoryRepository;
 
-import java.io.ByteArrayOutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -26,113 +24,56 @@ public class EmailService {
 
     private final JavaMailSender mailSender;
     private final InvoiceHistoryRepository invoiceHistoryRepository;
+    private final PdfService pdfService;
 
     private static final String FROM_EMAIL        = "info@visad.co.uk";
     private static final String TRUSTPILOT_BCC    = "visad.co.uk+5e14bff186@invite.trustpilot.com";
 
     // -------------------------------------------------------------------------
-    // Public entry point
+    // Invoice messages — queued and sent by EmailOutboxService
     // -------------------------------------------------------------------------
 
-    public void sendInvoiceEmail(EmailInvoiceRequest request) {
-        boolean isTInvoice = "send_t_invoice".equals(request.getAction());
-
-        byte[] pdfBytes  = generateInvoicePdf(request);
-        String pdfName   = "Invoice-" + sanitize(request.getInvoiceNumber()) + ".pdf";
-        String subject   = buildSubject(request, isTInvoice);
-
-        if (isTInvoice) {
-            sendTInvoice(request, pdfBytes, pdfName, subject);
-        } else {
-            sendRegularInvoice(request, pdfBytes, pdfName, subject);
-        }
+    public boolean isTInvoice(EmailInvoiceRequest request) {
+        return "send_t_invoice".equals(request.getAction());
     }
 
-    // -------------------------------------------------------------------------
-    // Regular invoice — one email to all recipients
-    // -------------------------------------------------------------------------
-
-    private void sendRegularInvoice(EmailInvoiceRequest request, byte[] pdfBytes, String pdfName, String subject) {
-        try {
-            String toEmail = request.getEmails() != null && !request.getEmails().isEmpty()
-                    ? request.getEmails().get(0) : request.getCustomerEmail();
-
-            String[] allTo = request.getEmails() != null
-                    ? request.getEmails().toArray(new String[0])
-                    : new String[]{request.getCustomerEmail()};
-
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            helper.setTo(allTo);
-            helper.setSubject(subject);
-            helper.setFrom(FROM_EMAIL);
-
-            if (request.getBcc() != null && !request.getBcc().isEmpty()) {
-                helper.setBcc(request.getBcc());
-            }
-
-            helper.setText(buildEmailHtml(request, request.getCustomerName(), false), true);
-            helper.addAttachment(pdfName, new ByteArrayDataSource(pdfBytes, "application/pdf"));
-
-            mailSender.send(message);
-            log.info("Invoice email sent to {}", (Object) allTo);
-
-            logHistory(request.getRecordId(), request.getRecordType(),
-                    "invoice", request.getInvoiceNumber(), toEmail);
-
-        } catch (MessagingException e) {
-            log.error("Failed to send invoice email", e);
-            throw new RuntimeException("Failed to send email: " + e.getMessage());
-        }
+    public String invoiceSubject(EmailInvoiceRequest request) {
+        return buildSubject(request, isTInvoice(request));
     }
 
-    // -------------------------------------------------------------------------
-    // T-Invoice — one personalised email per applicant
-    // -------------------------------------------------------------------------
-
-    private void sendTInvoice(EmailInvoiceRequest request, byte[] pdfBytes, String pdfName, String subject) {
-        List<EmailInvoiceRequest.ApplicantDto> applicants = request.getApplicants();
-
-        if (applicants == null || applicants.isEmpty()) {
-            // Fallback: send to emails list if no applicants provided
-            sendRegularInvoice(request, pdfBytes, pdfName, subject);
-            return;
+    /**
+     * Builds one invoice email. T-invoices go to one applicant each with the
+     * payment-confirmation body; regular invoices go to all recipients at once.
+     */
+    public MimeMessage buildInvoiceMessage(EmailInvoiceRequest request, List<String> to, String bcc,
+                                           String greetingName, boolean paymentConfirmation,
+                                           byte[] pdfBytes) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        helper.setTo(to.toArray(new String[0]));
+        helper.setSubject(invoiceSubject(request));
+        helper.setFrom(FROM_EMAIL);
+
+        if (bcc != null && !bcc.isEmpty()) {
+            helper.setBcc(bcc);
         }
 
-        for (EmailInvoiceRequest.ApplicantDto applicant : applicants) {
-            if (applicant.getEmail() == null || applicant.getEmail().isBlank()) continue;
-
-            try {
-                MimeMessage message = mailSender.createMimeMessage();
-                MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-                helper.setTo(applicant.getEmail());
-                helper.setSubject(subject);
-                helper.setFrom(FROM_EMAIL);
-                helper.setBcc(TRUSTPILOT_BCC);
-
-                helper.setText(buildEmailHtml(request, applicant.getName(), true), true);
-                helper.addAttachment(pdfName, new ByteArrayDataSource(pdfBytes, "application/pdf"));
-
-                mailSender.send(message);
-                log.info("T-Invoice email sent to {}", applicant.getEmail());
-
-                logHistory(request.getRecordId(), request.getRecordType(),
-                        "t-invoice", request.getInvoiceNumber(), applicant.getEmail());
+        helper.setText(buildEmailHtml(request, greetingName, paymentConfirmation), true);
+        String pdfName = "Invoice-" + sanitize(request.getInvoiceNumber()) + ".pdf";
+        helper.addAttachment(pdfName, new ByteArrayDataSource(pdfBytes, "application/pdf"));
+        return message;
+    }
 
-            } catch (MessagingException e) {
-                log.error("Failed to send T-Invoice to {}", applicant.getEmail(), e);
-                // Continue sending to remaining applicants
-            }
-        }
+    public String tInvoiceBcc() {
+        return TRUSTPILOT_BCC;
     }
 
     // -------------------------------------------------------------------------
     // Invoice history logging
     // -------------------------------------------------------------------------
 
-    private void logHistory(Long recordId, String recordType, String invoiceType,
-                            String invoiceNumber, String sentToEmail) {
+    public void logHistory(Long recordId, String recordType, String invoiceType,
+                           String invoiceNumber, String sentToEmail) {
         if (recordId == null) return;
         try {
             InvoiceHistory history = InvoiceHistory.builder()
@@ -176,103 +117,8 @@ public class EmailService {
     // PDF generation
     // -------------------------------------------------------------------------
 
-    private byte[] generateInvoicePdf(EmailInvoiceRequest request) {
-        String html = buildPdfHtml(request);
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            PdfRendererBuilder builder = new PdfRendererBuilder();
-            builder.useFastMode();
-            builder.withHtmlContent(html, null);
-            builder.toStream(baos);
-            builder.run();
-            return baos.toByteArray();
-        } catch (Exception e) {
-            log.error("Failed to generate invoice PDF", e);
-            throw new RuntimeException("PDF generation failed: " + e.getMessage());
-        }
-    }
-
-    private String buildPdfHtml(EmailInvoiceRequest request) {
-        boolean isTInvoice = "send_t_invoice".equals(request.getAction());
-        StringBuilder h = new StringBuilder();
-        h.append("<!DOCTYPE html><html><head><meta charset='UTF-8'/>");
-        h.append("<style>");
-        h.append("body{font-family:Arial,sans-serif;color:#333;font-size:13px;margin:40px;}");
-        h.append(".header{text-align:center;border-bottom:2px solid #1e3a5f;padding-bottom:16px;margin-bottom:24px;}");
-        h.append(".logo-visa{font-size:28px;font-weight:800;color:#1e3a5f;}");
-        h.append(".logo-d{font-size:28px;font-weight:800;color:#20c997;}");
-        h.append(".address{font-size:11px;color:#888;margin-top:4px;}");
-        h.append("table{width:100%;border-collapse:collapse;margin-bottom:16px;}");
-        h.append("th{background:#f0f0f0;padding:8px;text-align:left;font-size:11px;border:1px solid #ddd;}");
-        h.append("td{padding:8px;border:1px solid #ddd;font-size:12px;}");
-        h.append(".totals-table{width:220px;margin-left:auto;border:none;}");
-        h.append(".totals-table td{border:none;padding:4px 0;}");
-        h.append(".total-row td{font-size:15px;font-weight:700;color:#1e3a5f;border-top:1px solid #ddd;padding-top:8px;}");
-        h.append(".badge{display:inline-block;padding:4px 12px;border-radius:20px;font-size:11px;font-weight:600;}");
-        h.append(".badge-paid{background:#d4edda;color:#155724;}");
-        h.append(".badge-unpaid{background:#fff3cd;color:#856404;}");
-        h.append("</style></head><body>");
-
-        // Header
-        h.append("<div class='header'>");
-        h.append("<span class='logo-visa'>VISA</span><span class='logo-d'>D</span>");
-        h.append("<div class='address'>iWeBron Limited, 7 Bell Yard, London WC2A 2JR</div>");
-        h.append("</div>");
-
-        // Invoice meta
-        h.append("<table style='margin-bottom:24px;'><tr>");
-        h.append("<td><strong>Invoice No.</strong><br/>").append(esc(request.getInvoiceNumber())).append("</td>");
-        h.append("<td><strong>Date</strong><br/>").append(getCurrentDate()).append("</td>");
-        h.append("<td><strong>").append(isTInvoice ? "Amount Paid" : "Amount Due").append("</strong><br/>£").append(esc(request.getTotal())).append("</td>");
-        h.append("<td><strong>Status</strong><br/>");
-        if (isTInvoice) {
-            h.append("<span class='badge badge-paid'>&#10003; PAID</span>");
-        } else {
-            h.append("<span class='badge badge-unpaid'>PENDING</span>");
-        }
-        h.append("</td></tr></table>");
-
-        // Bill to
-        h.append("<div style='margin-bottom:20px;'>");
-        h.append("<strong>Bill To:</strong><br/>");
-        h.append(esc(request.getCustomerName())).append("<br/>");
-        h.append(esc(request.getCustomerAddress())).append("<br/>");
-        h.append(esc(request.getCustomerEmail()));
-        h.append("</div>");
-
-        // Items
-        if (request.getInvoiceItems() != null && !request.getInvoiceItems().isEmpty()) {
-            h.append("<table><tr>");
-            h.append("<th>Description</th><th style='width:60px;text-align:center;'>Units</th>");
-            h.append("<th style='width:80px;text-align:right;'>Amount</th>");
-            h.append("</tr>");
-            for (EmailInvoiceRequest.EmailItemDto item : request.getInvoiceItems()) {
-                String desc = esc(item.getName());
-                if (item.getPackage_() != null) desc += " - " + esc(item.getPackage_());
-                if (item.getVisaType() != null) desc += " " + esc(item.getVisaType());
-                if (item.getCountry() != null) desc += " - " + esc(item.getCountry());
-                h.append("<tr><td>").append(desc).append("</td>");
-                h.append("<td style='text-align:center;'>1</td>");
-                h.append("<td style='text-align:right;'>£").append(esc(item.getPrice())).append("</td></tr>");
-            }
-            h.append("</table>");
-        }
-
-        // Totals
-        h.append("<table class='totals-table'>");
-        h.append("<tr><td>Subtotal</td><td style='text-align:right;'>£").append(esc(request.getSubtotal())).append("</td></tr>");
-        if (request.getDiscountAmount() != null && !request.getDiscountAmount().equals("0") && !request.getDiscountAmount().equals("0.00")) {
-            String discLabel = "Discount";
-            if (request.getDiscountPercent() != null && !request.getDiscountPercent().equals("0")) {
-                discLabel += " (" + request.getDiscountPercent() + "%)";
-            }
-            h.append("<tr><td style='color:#20c997;'>").append(discLabel).append("</td>");
-            h.append("<td style='text-align:right;color:#20c997;'>-£").append(esc(request.getDiscountAmount())).append("</td></tr>");
-        }
-        h.append("<tr class='total-row'><td>Total</td><td style='text-align:right;'>£").append(esc(request.getTotal())).append("</td></tr>");
-        h.append("</table>");
-
-        h.append("</body></html>");
-        return h.toString();
+    public byte[] generateInvoicePdf(EmailInvoiceRequest request) {
+        return pdfService.renderInvoice(request);
     }
 
     // -------------------------------------------------------------------------
@@ -0,0 +1,392 @@
+package uk.co.visad.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.co.visad.util.FileEncryptionUtil;
+
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background job that encrypts existing plaintext files under the upload root.
+ *
+ * Files are streamed through a small low-priority worker pool, throttled to a
+ * configured byte rate so the migration can run during business hours. Every
+ * finished path is appended to a checkpoint file; a cancelled or crashed run
+ * resumes where it left off. The checkpoint is removed after a clean run.
+ *
+ * Skips:
+ *  - Files already encrypted (VISADENC / VISADEC2 header)
+ *  - The forms/ subdirectory (served as static resources, must remain plaintext)
+ */
+@Service
+@Slf4j
+public class FileEncryptionMigrationService {
+
+    public enum State { IDLE, RUNNING, CANCELLING, CANCELLED, COMPLETED, FAILED }
+
+    private static final String CHECKPOINT_FILE = ".encryption-migration.checkpoint";
+    private static final String TMP_SUFFIX = ".enc_tmp";
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    @Value("${app.upload.root:/home/VisaD/visad.co.uk/vault_uploads}")
+    private String uploadRoot;
+
+    @Value("${app.encryption.migration.threads:2}")
+    private int threads;
+
+    @Value("${app.encryption.migration.bytes-per-second:10485760}")
+    private long bytesPerSecond;
+
+    @Autowired(required = false)
+    private FileEncryptionUtil encryptionUtil;
+
+    private volatile Job current;
+
+    public boolean isAvailable() {
+        return encryptionUtil != null;
+    }
+
+    /**
+     * Starts a migration run in the background, resuming from the checkpoint if one exists.
+     */
+    public synchronized MigrationStatus start() {
+        if (encryptionUtil == null) {
+            throw new IllegalStateException("Encryption is not configured");
+        }
+        if (current != null && current.isActive()) {
+            throw new IllegalStateException("Encryption migration is already running");
+        }
+        Job job = new Job(Paths.get(uploadRoot).normalize());
+        current = job;
+        Thread coordinator = new Thread(job::run, "encryption-migration");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        return job.status();
+    }
+
+    public MigrationStatus status() {
+        Job job = current;
+        return job != null ? job.status() : MigrationStatus.idle();
+    }
+
+    public MigrationStatus cancel() {
+        Job job = current;
+        if (job == null || !job.isActive()) {
+            throw new IllegalStateException("No encryption migration is running");
+        }
+        job.cancel();
+        return job.status();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Job job = current;
+        if (job != null && job.isActive()) {
+            job.cancel();
+        }
+    }
+
+    public record MigrationStatus(State state, LocalDateTime startedAt, LocalDateTime finishedAt,
+                                  long scanned, long encrypted, long alreadyEncrypted, long resumed,
+                                  long bytesEncrypted, long failureCount, List<String> failures) {
+
+        static MigrationStatus idle() {
+            return new MigrationStatus(State.IDLE, null, null, 0, 0, 0, 0, 0, 0, List.of());
+        }
+    }
+
+    private class Job {
+
+        private final Path root;
+        private final Path formsDir;
+        private final Path checkpointFile;
+        private final RateLimiter limiter = new RateLimiter(bytesPerSecond);
+        private final Set<String> completed = ConcurrentHashMap.newKeySet();
+
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong encrypted = new AtomicLong();
+        private final AtomicLong alreadyEncrypted = new AtomicLong();
+        private final AtomicLong resumed = new AtomicLong();
+        private final AtomicLong bytesEncrypted = new AtomicLong();
+        private final AtomicLong failureCount = new AtomicLong();
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile LocalDateTime finishedAt;
+        private volatile State state = State.RUNNING;
+        private volatile boolean cancelled;
+        private BufferedWriter checkpoint;
+
+        Job(Path root) {
+            this.root = root;
+            this.formsDir = root.resolve("forms");
+            this.checkpointFile = root.resolve(CHECKPOINT_FILE);
+        }
+
+        boolean isActive() {
+            return state == State.RUNNING || state == State.CANCELLING;
+        }
+
+        void cancel() {
+            cancelled = true;
+            state = State.CANCELLING;
+        }
+
+        MigrationStatus status() {
+            List<String> failureSnapshot;
+            synchronized (failures) {
+                failureSnapshot = List.copyOf(failures);
+            }
+            return new MigrationStatus(state, startedAt, finishedAt, scanned.get(), encrypted.get(),
+                    alreadyEncrypted.get(), resumed.get(), bytesEncrypted.get(), failureCount.get(),
+                    failureSnapshot);
+        }
+
+        void run() {
+            // Bounded queue + caller-runs: the walker never gets far ahead of the workers
+            AtomicInteger threadIndex = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads * 4), r -> {
+                        Thread t = new Thread(r, "encryption-migration-" + threadIndex.incrementAndGet());
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+                        return t;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+            try {
+                if (Files.exists(checkpointFile)) {
+                    completed.addAll(Files.readAllLines(checkpointFile, StandardCharsets.UTF_8));
+                    log.info("Resuming encryption migration: {} files already done", completed.size());
+                }
+                checkpoint = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (cancelled) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        return dir.equals(formsDir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (cancelled) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        if (attrs.isRegularFile() && isCandidate(file)) {
+                            pool.execute(() -> migrate(file));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        // An unreadable file or directory must not end the run: every resume would stop there
+                        log.warn("Cannot access {}, skipping: {}", file, e.getMessage());
+                        recordFailure(root.relativize(file).toString(), e);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                        if (e != null) {
+                            log.warn("Failed to list {}: {}", dir, e.getMessage());
+                            recordFailure(root.relativize(dir).toString(), e);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                closeCheckpoint();
+
+                if (cancelled) {
+                    state = State.CANCELLED;
+                } else {
+                    if (failureCount.get() == 0) {
+                        Files.deleteIfExists(checkpointFile);
+                    }
+                    state = State.COMPLETED;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                state = State.CANCELLED;
+            } catch (Exception e) {
+                log.error("Encryption migration failed", e);
+                pool.shutdownNow();
+                recordFailure(root.toString(), e);
+                state = State.FAILED;
+            } finally {
+                finishedAt = LocalDateTime.now();
+                closeCheckpoint();
+            }
+
+            log.info("Encryption migration {}. encrypted={}, skipped={}, resumed={}, failures={}",
+                    state, encrypted.get(), alreadyEncrypted.get(), resumed.get(), failureCount.get());
+        }
+
+        private boolean isCandidate(Path file) {
+            // Skip the forms/ directory — served as static resources
+            if (file.startsWith(formsDir) || file.equals(checkpointFile)) {
+                return false;
+            }
+            return !file.getFileName().toString().endsWith(TMP_SUFFIX);
+        }
+
+        private void migrate(Path file) {
+            if (cancelled) {
+                return;
+            }
+            String relative = root.relativize(file).toString();
+            scanned.incrementAndGet();
+            if (completed.contains(relative)) {
+                resumed.incrementAndGet();
+                return;
+            }
+
+            try {
+                if (encryptionUtil.detect(file) != FileEncryptionUtil.Format.PLAINTEXT) {
+                    alreadyEncrypted.incrementAndGet();
+                } else {
+                    long size = Files.size(file);
+                    // Atomic write: temp file + rename
+                    Path tmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+                    try (InputStream in = new ThrottledInputStream(Files.newInputStream(file))) {
+                        encryptionUtil.encrypt(in, tmp);
+                    }
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    encrypted.incrementAndGet();
+                    bytesEncrypted.addAndGet(size);
+                    log.debug("Encrypted: {}", relative);
+                }
+                markCompleted(relative);
+            } catch (InterruptedIOException e) {
+                // Cancelled mid-file: the temp file is already removed, the original is untouched
+            } catch (Exception e) {
+                recordFailure(relative, e);
+                log.error("Failed to encrypt: {}", file, e);
+            }
+        }
+
+        private synchronized void markCompleted(String relative) throws IOException {
+            completed.add(relative);
+            if (checkpoint == null) {
+                return;
+            }
+            checkpoint.write(relative);
+            checkpoint.newLine();
+            checkpoint.flush();
+        }
+
+        private synchronized void closeCheckpoint() {
+            if (checkpoint == null) {
+                return;
+            }
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                log.warn("Failed to close encryption migration checkpoint: {}", e.getMessage());
+            }
+            checkpoint = null;
+        }
+
+        private void recordFailure(String path, Exception e) {
+            failureCount.incrementAndGet();
+            synchronized (failures) {
+                if (failures.size() < MAX_REPORTED_FAILURES) {
+                    failures.add(path + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private class ThrottledInputStream extends FilterInputStream {
+
+            ThrottledInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (cancelled) {
+                    throw new InterruptedIOException("Encryption migration cancelled");
+                }
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    limiter.acquire(n);
+                }
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Shared byte budget across all workers; 0 or less means unlimited.
+     */
+    private static class RateLimiter {
+
+        private final long bytesPerSecond;
+        private long nextFreeNanos = System.nanoTime();
+
+        RateLimiter(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(int bytes) throws InterruptedIOException {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long start = Math.max(now, nextFreeNanos);
+                nextFreeNanos = start + bytes * 1_000_000_000L / bytesPerSecond;
+                waitNanos = start - now;
+            }
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttled");
+                }
+            }
+        }
+    }
+}
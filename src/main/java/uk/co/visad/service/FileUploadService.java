@@ -6,28 +6,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import uk.co.visad.dto.locker.LockerDtos.FileUploadResponse;
-import uk.co.visad.entity.Dependent;
-import uk.co.visad.entity.Traveler;
 import uk.co.visad.entity.TravelerQuestions;
 import uk.co.visad.exception.ResourceNotFoundException;
 import uk.co.visad.exception.UnauthorizedException;
-import uk.co.visad.repository.DependentRepository;
 import uk.co.visad.repository.TravelerQuestionsRepository;
-import uk.co.visad.repository.TravelerRepository;
 import uk.co.visad.util.FileEncryptionUtil;
-import uk.co.visad.util.NamedByteArrayResource;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -37,21 +30,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class FileUploadService {
 
-    private final TravelerRepository travelerRepository;
-    private final DependentRepository dependentRepository;
+    private final LockerTokenResolver lockerTokenResolver;
     private final TravelerQuestionsRepository travelerQuestionsRepository;
     private final ObjectMapper objectMapper;
     private final LockerActivityService lockerActivityService;
+    private final LegacyFileIndex legacyFileIndex;
+    private final BlobStoreService blobStoreService;
 
     // New uploads go to:  uploadRoot/locker/YYYY/MM/
     @Value("${app.upload.root:/home/VisaD/visad.co.uk/vault_uploads}")
     private String uploadRoot;
 
-    // Legacy PHP-era files live under the old vault.visad.co.uk/uploads/documents/ tree.
-    // We only READ from here (download fallback) — never write.
-    @Value("${app.upload.legacy-dir:/home/VisaD/visad.co.uk/vault.visad.co.uk/uploads/documents}")
-    private String legacyDir;
-
     @Value("${app.upload.allowed-extensions:pdf,doc,docx,jpg,jpeg,png}")
     private String allowedExtensionsString;
 
@@ -136,15 +125,9 @@ public class FileUploadService {
         List<String> existingFiles = getExistingFiles(questions, entityField);
 
         if (existingFiles.remove(filename)) {
-            try {
-                Path lockerBase = Paths.get(uploadRoot, "locker").normalize();
-                Path filePath = lockerBase.resolve(filename).normalize();
-                if (filePath.startsWith(lockerBase)) {
-                    Files.deleteIfExists(filePath);
-                    log.info("Deleted physical file: {}", filename);
-                }
-            } catch (IOException e) {
-                log.error("Failed to delete physical file: {}", filename, e);
+            // Blob is only removed when no other upload references it
+            if (!blobStoreService.release("locker/" + filename)) {
+                deleteLegacyLockerFile(filename);
             }
 
             updateQuestionField(questions, entityField, existingFiles);
@@ -156,7 +139,7 @@ public class FileUploadService {
     }
 
     public Resource getFileAsResource(String token, String filename) {
-        findRecordByToken(token);
+        lockerTokenResolver.resolve(token);
 
         try {
             // Primary: new unified location  →  uploadRoot/locker/YYYY/MM/filename
@@ -165,48 +148,33 @@ public class FileUploadService {
             if (!filePath.startsWith(lockerBase)) {
                 throw new UnauthorizedException("Invalid file path");
             }
-            if (Files.exists(filePath)) {
-                byte[] bytes = Files.readAllBytes(filePath);
-                if (encryptionUtil != null && encryptionUtil.isEncrypted(bytes)) {
-                    try {
-                        bytes = encryptionUtil.decrypt(bytes);
-                        log.info("Decrypted file for download: {}", filename);
-                    } catch (java.security.GeneralSecurityException e) {
-                        throw new IOException("Failed to decrypt file: " + filename, e);
-                    }
-                }
-                String leafName = filePath.getFileName().toString();
-                return new NamedByteArrayResource(bytes, leafName);
+            String leafName = filePath.getFileName().toString();
+            Optional<Resource> blob = blobStoreService.open(
+                    "locker/" + lockerBase.relativize(filePath).toString().replace('\\', '/'), leafName);
+            if (blob.isPresent()) {
+                return blob.get();
             }
 
-            // Fallback: legacy PHP-era category folders under legacyDir
-            Path legacyBase = Paths.get(legacyDir).normalize();
-            String[] legacyFolders = {"bookings", "evisa", "share_code", "flight", "hotel",
-                                      "insurance", "application", "appointment", "forms",
-                                      "client_documents"};
-            for (String folder : legacyFolders) {
-                Path legacyPath = legacyBase.resolve(folder).resolve(filename).normalize();
-                if (!legacyPath.startsWith(legacyBase)) continue;
-                Resource legacyResource = new UrlResource(legacyPath.toUri());
-                if (legacyResource.exists() && legacyResource.isReadable()) {
-                    log.info("Served legacy file from {}/{}", folder, filename);
-                    return legacyResource;
+            // Files saved before deduplication live at their original path
+            if (Files.exists(filePath)) {
+                // Plaintext is served from disk; encrypted files decrypt as they stream
+                if (encryptionUtil == null) {
+                    return new FileSystemResource(filePath);
+                }
+                try {
+                    return encryptionUtil.toDownloadResource(filePath, leafName);
+                } catch (java.security.GeneralSecurityException e) {
+                    throw new IOException("Failed to decrypt file: " + filename, e);
                 }
             }
 
-            // Last-resort fallback: legacy client_documents with year/month sub-dirs
-            Path clientDocsBase = legacyBase.resolve("client_documents").normalize();
-            Path cdFilePath = clientDocsBase.resolve(filename).normalize();
-            if (cdFilePath.startsWith(clientDocsBase)) {
-                Resource cdResource = new UrlResource(cdFilePath.toUri());
-                if (cdResource.exists() && cdResource.isReadable()) {
-                    log.info("Served pre-consolidation file from client_documents/{}", filename);
-                    return cdResource;
-                }
+            // Fallback: legacy PHP-era category folders (see LegacyFileIndex)
+            Optional<Path> legacyPath = legacyFileIndex.resolve(filename);
+            if (legacyPath.isPresent()) {
+                log.info("Served legacy file {}", legacyPath.get());
+                return new FileSystemResource(legacyPath.get());
             }
 
-            throw new ResourceNotFoundException("File not found: " + filename);
-        } catch (MalformedURLException e) {
             throw new ResourceNotFoundException("File not found: " + filename);
         } catch (IOException e) {
             throw new ResourceNotFoundException("Could not read file: " + e.getMessage());
@@ -215,6 +183,19 @@ public class FileUploadService {
 
     // --- Helpers ---
 
+    private void deleteLegacyLockerFile(String filename) {
+        try {
+            Path lockerBase = Paths.get(uploadRoot, "locker").normalize();
+            Path filePath = lockerBase.resolve(filename).normalize();
+            if (filePath.startsWith(lockerBase)) {
+                Files.deleteIfExists(filePath);
+                log.info("Deleted physical file: {}", filename);
+            }
+        } catch (IOException e) {
+            log.error("Failed to delete physical file: {}", filename, e);
+        }
+    }
+
     private void validateFile(MultipartFile file) {
         if (file.getSize() > maxFileSize) {
             throw new IllegalArgumentException("File too large");
@@ -247,28 +228,13 @@ public class FileUploadService {
         String year = String.valueOf(now.getYear());
         String month = String.format("%02d", now.getMonthValue());
 
-        Path uploadDir = Paths.get(uploadRoot, "locker", year, month);
-        if (!Files.exists(uploadDir)) {
-            Files.createDirectories(uploadDir);
-        }
-
-        Path filePath = uploadDir.resolve(uniqueFilename);
+        // Content-addressed: identical uploads share one (encrypted) blob
+        String key = year + "/" + month + "/" + uniqueFilename;
+        blobStoreService.store("locker/" + key, file);
 
-        if (encryptionUtil != null) {
-            try {
-                byte[] encrypted = encryptionUtil.encrypt(file.getInputStream().readAllBytes());
-                Files.write(filePath, encrypted);
-                log.info("Encrypted and saved file: {}", uniqueFilename);
-            } catch (java.security.GeneralSecurityException e) {
-                throw new IOException("Failed to encrypt file", e);
-            }
-        } else {
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-        }
-
-        // Stored key is relative to uploadRoot/locker/ so the download path
-        // resolves correctly via: lockerBase.resolve("YYYY/MM/filename")
-        return year + "/" + month + "/" + uniqueFilename;
+        // Stored key is relative to uploadRoot/locker/, same format as files saved
+        // before deduplication, so existing JSON lists and links keep working
+        return key;
     }
 
     private List<String> getExistingFiles(TravelerQuestions questions, String entityField) {
@@ -322,22 +288,12 @@ public class FileUploadService {
     }
 
     private RecordWrapper findRecordByToken(String token) {
+        LockerTokenResolver.LockerRecord resolved = lockerTokenResolver.resolve(token);
         RecordWrapper wrapper = new RecordWrapper();
-        Optional<Traveler> traveler = travelerRepository.findByPublicUrlToken(token);
-        if (traveler.isPresent()) {
-            wrapper.recordId = traveler.get().getId();
-            wrapper.questions = travelerQuestionsRepository.findByRecordIdAndRecordType(wrapper.recordId, "traveler")
-                    .orElse(null);
-            return wrapper;
-        }
-
-        Optional<Dependent> dependent = dependentRepository.findByPublicUrlToken(token);
-        if (dependent.isPresent()) {
-            wrapper.recordId = dependent.get().getId();
-            wrapper.questions = travelerQuestionsRepository.findByRecordIdAndRecordType(wrapper.recordId, "dependent")
-                    .orElse(null);
-            return wrapper;
+        wrapper.recordId = resolved.recordId();
+        if (resolved.questionsId() != null) {
+            wrapper.questions = travelerQuestionsRepository.findById(resolved.questionsId()).orElse(null);
         }
-        throw new UnauthorizedException("Invalid token");
+        return wrapper;
     }
 }
@@ -0,0 +1,69 @@
+package uk.co.visad.service;
+
+import uk.co.visad.model.presence.SessionState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-local presence store. Default for single-node deployments; a single
+ * instance can also be shared between application contexts in tests to stand
+ * in for a cluster.
+ */
+public class InMemoryPresenceStore implements PresenceStore {
+
+    // Key: SessionId, Value: SessionState
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    // Key: UserId, Value: SessionIds
+    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    @Override
+    public void saveSession(SessionState session) {
+        sessions.put(session.getSessionId(), session);
+        userSessions.computeIfAbsent(session.getUserId(), k -> ConcurrentHashMap.newKeySet())
+                .add(session.getSessionId());
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        SessionState removed = sessions.remove(sessionId);
+        if (removed != null) {
+            userSessions.computeIfPresent(removed.getUserId(), (userId, ids) -> {
+                ids.remove(sessionId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    @Override
+    public boolean isUserOnline(String userId) {
+        return userSessions.containsKey(userId);
+    }
+
+    @Override
+    public List<SessionState> findAllSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    @Override
+    public int countOnlineUsers() {
+        return userSessions.size();
+    }
+
+    @Override
+    public long nextVersion() {
+        return version.incrementAndGet();
+    }
+
+    @Override
+    public long currentVersion() {
+        return version.get();
+    }
+}
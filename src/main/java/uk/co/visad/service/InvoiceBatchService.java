@@ -0,0 +1,210 @@
+package uk.co.visad.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.co.visad.entity.Dependent;
+import uk.co.visad.entity.Traveler;
+import uk.co.visad.repository.DependentRepository;
+import uk.co.visad.repository.TravelerRepository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Saves invoice snapshots for every traveler that doesn't have one yet.
+ * PHP equivalent: travelers.php?action=save_all_invoices
+ *
+ * Travelers are read in id order, app.invoice.batch.chunk-size at a time,
+ * with all of a chunk's dependents fetched in one query, and priced by
+ * PricingService exactly as the invoice view prices them. Each chunk is written
+ * with one JDBC batch in its own short transaction, so the travelers table is
+ * never locked for the whole run. A row that fails is reported and skipped;
+ * the rest of the chunk still commits. The persistence context is cleared
+ * after every chunk: on the request thread it is the open-in-view one, which
+ * would otherwise hold every traveler and dependent read by the run.
+ */
+@Service
+@Slf4j
+public class InvoiceBatchService {
+
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    private static final String UPDATE_SQL = "UPDATE travelers SET invoice_subtotal = ?, invoice_discount_type = ?, " +
+            "invoice_discount_value = ?, invoice_discount_amount = ?, invoice_total = ?, invoice_items_json = ?, " +
+            "invoice_generated = TRUE, invoice_generated_at = ? " +
+            "WHERE id = ? AND (invoice_generated IS NULL OR invoice_generated = FALSE)";
+
+    private final TravelerRepository travelerRepository;
+    private final DependentRepository dependentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final PricingService pricingService;
+    private final EntityManager entityManager;
+
+    @Value("${app.invoice.batch.chunk-size:200}")
+    private int chunkSize;
+
+    private final AtomicReference<Progress> current = new AtomicReference<>();
+
+    public InvoiceBatchService(TravelerRepository travelerRepository, DependentRepository dependentRepository,
+                               JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               ObjectMapper objectMapper, PricingService pricingService,
+                               EntityManager entityManager) {
+        this.travelerRepository = travelerRepository;
+        this.dependentRepository = dependentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.pricingService = pricingService;
+        this.entityManager = entityManager;
+    }
+
+    public record Failure(Long travelerId, String error) {
+    }
+
+    public record Progress(boolean running, int chunks, int processed, int saved, int failed,
+                           List<Failure> failures, LocalDateTime startedAt, LocalDateTime finishedAt) {
+    }
+
+    /**
+     * Runs the batch on the calling thread.
+     *
+     * @throws IllegalStateException if a run is already in progress
+     */
+    public Progress saveAllInvoices() {
+        Progress initial = new Progress(true, 0, 0, 0, 0, List.of(), LocalDateTime.now(), null);
+        Progress previous = current.get();
+        if ((previous != null && previous.running()) || !current.compareAndSet(previous, initial)) {
+            throw new IllegalStateException("Invoice batch is already running");
+        }
+
+        int chunks = 0, processed = 0, saved = 0;
+        List<Failure> failures = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        long afterId = 0;
+        try {
+            while (true) {
+                List<Traveler> chunk = travelerRepository.findWithoutInvoiceAfter(afterId, PageRequest.of(0, chunkSize));
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                afterId = chunk.get(chunk.size() - 1).getId();
+
+                try {
+                    saved += writeChunk(chunk, now, failures);
+                } finally {
+                    // Drop the chunk's travelers and dependents before reading the next one
+                    entityManager.clear();
+                }
+                processed += chunk.size();
+                chunks++;
+                current.set(new Progress(true, chunks, processed, saved, failures.size(),
+                        reported(failures), initial.startedAt(), null));
+                log.info("Invoice batch: chunk {} done, {} processed, {} saved, {} failed",
+                        chunks, processed, saved, failures.size());
+            }
+        } finally {
+            current.set(new Progress(false, chunks, processed, saved, failures.size(),
+                    reported(failures), initial.startedAt(), LocalDateTime.now()));
+        }
+        return current.get();
+    }
+
+    /**
+     * Progress of the running batch, or the result of the last one (null if none has run).
+     */
+    public Progress status() {
+        return current.get();
+    }
+
+    // --- Chunk processing ---
+
+    private int writeChunk(List<Traveler> chunk, LocalDateTime now, List<Failure> failures) {
+        List<Long> ids = chunk.stream().map(Traveler::getId).collect(Collectors.toList());
+        // Key: traveler id, Value: its dependents in id order
+        Map<Long, List<Dependent>> dependentsByTraveler = dependentRepository.findAllByTraveler_IdIn(ids).stream()
+                .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                .collect(Collectors.groupingBy(d -> d.getTraveler().getId(), HashMap::new, Collectors.toList()));
+
+        List<Object[]> rows = new ArrayList<>(chunk.size());
+        for (Traveler traveler : chunk) {
+            try {
+                rows.add(buildRow(traveler,
+                        dependentsByTraveler.getOrDefault(traveler.getId(), Collections.emptyList()), now));
+            } catch (Exception e) {
+                log.error("Failed to build invoice for traveler {}", traveler.getId(), e);
+                failures.add(new Failure(traveler.getId(), e.getMessage()));
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            int[] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(UPDATE_SQL, rows));
+            return countUpdated(counts);
+        } catch (Exception e) {
+            // One bad row fails the whole batch: retry row by row to isolate it
+            log.warn("Invoice batch write failed, retrying {} rows individually: {}", rows.size(), e.getMessage());
+            int updated = 0;
+            for (Object[] row : rows) {
+                try {
+                    updated += jdbcTemplate.update(UPDATE_SQL, row);
+                } catch (Exception rowError) {
+                    Long travelerId = (Long) row[row.length - 1];
+                    log.error("Failed to save invoice for traveler {}", travelerId, rowError);
+                    failures.add(new Failure(travelerId, rowError.getMessage()));
+                }
+            }
+            return updated;
+        }
+    }
+
+    private Object[] buildRow(Traveler traveler, List<Dependent> dependents, LocalDateTime now) throws Exception {
+        PricingService.Quote quote = pricingService.quote(traveler, dependents);
+
+        List<Map<String, Object>> items = new ArrayList<>(quote.lines().size());
+        for (PricingService.Line line : quote.lines()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("type", line.type());
+            item.put("id", line.id());
+            item.put("name", line.name());
+            item.put("service", line.packageName());
+            item.put("price", line.price());
+            items.add(item);
+        }
+
+        return new Object[] { quote.subtotal(), quote.discountType(), quote.discountValue(), quote.discount(),
+                quote.total(), objectMapper.writeValueAsString(items), Timestamp.valueOf(now), traveler.getId() };
+    }
+
+    private static int countUpdated(int[] counts) {
+        int updated = 0;
+        for (int count : counts) {
+            // Drivers without per-row counts report SUCCESS_NO_INFO (-2)
+            updated += count > 0 ? count : (count == java.sql.Statement.SUCCESS_NO_INFO ? 1 : 0);
+        }
+        return updated;
+    }
+
+    private static List<Failure> reported(List<Failure> failures) {
+        return List.copyOf(failures.size() > MAX_REPORTED_FAILURES
+                ? failures.subList(0, MAX_REPORTED_FAILURES) : failures);
+    }
+}
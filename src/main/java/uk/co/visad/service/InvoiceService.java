@@ -15,14 +15,27 @@ public class InvoiceService {
     private final uk.co.visad.repository.TravelerRepository travelerRepository;
     private final uk.co.visad.repository.DependentRepository dependentRepository;
     private final uk.co.visad.repository.InvoiceHistoryRepository invoiceHistoryRepository;
+    private final PricingService pricingService;
+    private final InvoiceViewCache invoiceViewCache;
 
     @Transactional(readOnly = true)
     public List<InvoiceHistory> getHistory(Long travelerId) {
         return invoiceHistoryRepository.findByRecordIdOrderBySentAtDesc(travelerId);
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Invoice view for a traveler, served from InvoiceViewCache when nothing
+     * about the record has changed since it was last built.
+     */
     public uk.co.visad.dto.InvoiceViewDto generateInvoiceView(String recordType, Long id) {
+        return invoiceViewCache.get(id, () -> buildInvoiceView(recordType, id));
+    }
+
+    public java.util.Map<String, Object> getViewCacheStats() {
+        return invoiceViewCache.stats();
+    }
+
+    private uk.co.visad.dto.InvoiceViewDto buildInvoiceView(String recordType, Long id) {
         if (!"traveler".equalsIgnoreCase(recordType)) {
              // For now, minimal support if recordType is dependent (usually invoices are for main traveler)
              // But following PHP logic, we fetch 'dependents' table if type is dependent
@@ -53,95 +66,32 @@ public class InvoiceService {
         java.time.LocalDate now = java.time.LocalDate.now();
         java.time.format.DateTimeFormatter dtf = java.time.format.DateTimeFormatter.ofPattern("dd MMM yyyy");
         
-        // 3. Pricing Logic (Ported)
-        String pkg = traveler.getPackage_(); // Fixed getter
-        if (pkg == null) pkg = "Standard Package";
-        String pkgLower = pkg.toLowerCase();
-        
-        java.math.BigDecimal basePrice = new java.math.BigDecimal("149.00");
-        
-        if (pkgLower.contains("appointment only")) {
-            basePrice = new java.math.BigDecimal("99.00");
-        } else if (pkgLower.contains("full support") && !pkgLower.contains("fast track")) {
-             basePrice = new java.math.BigDecimal("149.00");
-        } else if (pkgLower.contains("fast track appointment")) {
-             basePrice = new java.math.BigDecimal("199.00");
-        } else if (pkgLower.contains("fast track full support")) {
-             basePrice = new java.math.BigDecimal("349.00");
-        }
+        // 3. Pricing (package_pricing lookup, shared with save-all-invoices)
+        List<uk.co.visad.entity.Dependent> dependents = dependentRepository.findByTraveler_Id(traveler.getId());
+        PricingService.Quote quote = pricingService.quote(traveler, dependents);
 
         // 4. Line Items
         List<uk.co.visad.dto.InvoiceItemDto> items = new java.util.ArrayList<>();
-        
-        // Main Item
-        String visaType = traveler.getVisaType();
-        if (visaType == null) visaType = "Tourist Visa";
-        String country = traveler.getTravelCountry();
-        String desc = visaType + (hasText(country) ? " - " + country : "");
-        
-        items.add(uk.co.visad.dto.InvoiceItemDto.builder()
-                .name(customerName + " - " + pkg)
-                .description(desc)
-                .price(basePrice)
-                .quantity(1)
-                .build());
-
-        // Dependents Items
-        List<uk.co.visad.entity.Dependent> dependents = dependentRepository.findByTraveler_Id(traveler.getId());
-        for (uk.co.visad.entity.Dependent dep : dependents) {
-            String depPkg = dep.getPackageType(); // Fixed getter
-            if (depPkg == null || depPkg.isEmpty()) depPkg = pkg;
-            String depPkgLower = depPkg.toLowerCase();
-            
-            java.math.BigDecimal depPrice = new java.math.BigDecimal("149.00");
-             if (depPkgLower.contains("appointment only")) {
-                depPrice = new java.math.BigDecimal("99.00");
-            } else if (depPkgLower.contains("full support") && !depPkgLower.contains("fast track")) {
-                 depPrice = new java.math.BigDecimal("149.00");
-            } else if (depPkgLower.contains("fast track appointment")) {
-                 depPrice = new java.math.BigDecimal("199.00");
-            } else if (depPkgLower.contains("fast track full support")) {
-                 depPrice = new java.math.BigDecimal("349.00");
-            }
-
-            String depName = getFullName(dep.getFirstName(), dep.getLastName());
-            if (depName.isEmpty()) depName = "Co-Traveler";
-            
-            String depVisa = dep.getVisaType();   if(depVisa==null) depVisa = visaType;
-            String depCtry = dep.getTravelCountry(); if(depCtry==null) depCtry = country;
-            String depDesc = depVisa + (hasText(depCtry) ? " - " + depCtry : "") + " (Co-Traveler)";
-            
-             items.add(uk.co.visad.dto.InvoiceItemDto.builder()
-                .name(depName + " - " + depPkg)
-                .description(depDesc)
-                .price(depPrice)
-                .quantity(1)
-                .build());
-        }
-
-        // 5. Validation & Totals
-        java.math.BigDecimal subtotal = java.math.BigDecimal.ZERO;
-        for(uk.co.visad.dto.InvoiceItemDto item : items) {
-            subtotal = subtotal.add(item.getPrice());
+        for (PricingService.Line line : quote.lines()) {
+            boolean main = "main".equals(line.type());
+            String name = main ? customerName : (line.name().isEmpty() ? "Co-Traveler" : line.name());
+            String visaType = line.visaType() != null ? line.visaType() : "Tourist Visa";
+            String desc = visaType + (hasText(line.country()) ? " - " + line.country() : "")
+                    + (main ? "" : " (Co-Traveler)");
+
+            items.add(uk.co.visad.dto.InvoiceItemDto.builder()
+                    .name(name + " - " + line.packageName())
+                    .description(desc)
+                    .price(line.price())
+                    .quantity(1)
+                    .build());
         }
 
-        // Discount
-        java.math.BigDecimal discountAmount = java.math.BigDecimal.ZERO;
-        String discountLabel = "";
-        
-        String dType = traveler.getDiscountType(); 
-        java.math.BigDecimal dVal = traveler.getDiscountValue(); // Fixed Type
-        
-        if ("percentage".equalsIgnoreCase(dType) && dVal != null && dVal.compareTo(java.math.BigDecimal.ZERO) > 0) {
-            discountAmount = subtotal.multiply(dVal).divide(new java.math.BigDecimal("100"));
-            discountLabel = "Discount (" + dVal.intValue() + "%)";
-        } else if ("fixed".equalsIgnoreCase(dType) && dVal != null && dVal.compareTo(java.math.BigDecimal.ZERO) > 0) {
-            discountAmount = dVal;
-            discountLabel = "Discount";
-        }
-        
-        if (discountAmount.compareTo(subtotal) > 0) discountAmount = subtotal;
-        java.math.BigDecimal total = subtotal.subtract(discountAmount);
+        // 5. Totals
+        java.math.BigDecimal subtotal = quote.subtotal();
+        java.math.BigDecimal discountAmount = quote.discount();
+        String discountLabel = quote.discountLabel();
+        java.math.BigDecimal total = quote.total();
 
         // Check if invoice is generated/locked in DB, if so usage might differ, 
         // but for 'view' we usually calculate fresh OR use saved if we implemented that preference.
@@ -0,0 +1,88 @@
+package uk.co.visad.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.co.visad.dto.InvoiceViewDto;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Per-traveler cache of generated invoice views.
+ *
+ * Entries are bounded by app.invoice.view-cache.max-size and expire after
+ * app.invoice.view-cache.ttl-ms. Keys include the current date so invoice and
+ * due dates never go stale across midnight. Writes to travelers, dependents and
+ * invoice_history evict the affected record (see InvoiceViewInvalidationListener);
+ * price table changes clear the whole cache.
+ */
+@Component
+@Slf4j
+public class InvoiceViewCache {
+
+    private record Key(Long travelerId, LocalDate date) {
+    }
+
+    private final Cache<Key, InvoiceViewDto> cache;
+
+    public InvoiceViewCache(@Value("${app.invoice.view-cache.max-size:1000}") long maxSize,
+                            @Value("${app.invoice.view-cache.ttl-ms:600000}") long ttlMs) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+    }
+
+    public InvoiceViewDto get(Long travelerId, Supplier<InvoiceViewDto> loader) {
+        return cache.get(new Key(travelerId, LocalDate.now()), key -> loader.get());
+    }
+
+    /**
+     * Evicts the record now and again after the surrounding transaction commits,
+     * so a view rebuilt from uncommitted-but-not-yet-visible data is not kept.
+     */
+    public void invalidate(Long travelerId) {
+        if (travelerId == null) {
+            return;
+        }
+        evict(travelerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(travelerId);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hit_rate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("average_load_ms", stats.averageLoadPenalty() / 1_000_000.0);
+        return result;
+    }
+
+    private void evict(Long travelerId) {
+        cache.asMap().keySet().removeIf(key -> key.travelerId().equals(travelerId));
+    }
+}
@@ -0,0 +1,153 @@
+package uk.co.visad.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import uk.co.visad.model.presence.Activity;
+import uk.co.visad.model.presence.SessionState;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Database-backed presence store for multi-node deployments.
+ *
+ * Sessions live in presence_sessions tagged with the owning node. Each node
+ * renews a lease on its rows every app.presence.lease-renew-ms (30 s); rows
+ * whose lease lapsed (node crashed or was killed) are purged by whichever node
+ * notices first, and the version is bumped so clients resync.
+ */
+@Slf4j
+public class JdbcPresenceStore implements PresenceStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int leaseTimeoutSeconds;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public JdbcPresenceStore(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, int leaseTimeoutSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.leaseTimeoutSeconds = leaseTimeoutSeconds;
+        log.info("Presence store: JDBC (node {})", nodeId);
+    }
+
+    @Override
+    public void saveSession(SessionState session) {
+        jdbcTemplate.update("INSERT INTO presence_sessions " +
+                        "(session_id, user_id, username, node_id, activity_json, last_seen) " +
+                        "VALUES (?, ?, ?, ?, ?, NOW()) " +
+                        "ON DUPLICATE KEY UPDATE activity_json = VALUES(activity_json), last_seen = NOW()",
+                session.getSessionId(), session.getUserId(), session.getUsername(), nodeId,
+                writeActivity(session.getCurrentActivity()));
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        jdbcTemplate.update("DELETE FROM presence_sessions WHERE session_id = ?", sessionId);
+    }
+
+    @Override
+    public boolean isUserOnline(String userId) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM presence_sessions WHERE user_id = ?", Integer.class, userId);
+        return count != null && count > 0;
+    }
+
+    @Override
+    public List<SessionState> findAllSessions() {
+        return jdbcTemplate.query(
+                "SELECT session_id, user_id, username, activity_json FROM presence_sessions",
+                (rs, rowNum) -> {
+                    SessionState session = new SessionState(rs.getString("session_id"),
+                            rs.getString("user_id"), rs.getString("username"));
+                    Activity activity = readActivity(rs.getString("activity_json"));
+                    if (activity != null) {
+                        session.setCurrentActivity(activity);
+                    }
+                    return session;
+                });
+    }
+
+    @Override
+    public int countOnlineUsers() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(DISTINCT user_id) FROM presence_sessions", Integer.class);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public long nextVersion() {
+        // LAST_INSERT_ID(expr) is per-connection, so both statements must share one
+        Long next = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try (Statement st = con.createStatement()) {
+                st.executeUpdate("UPDATE presence_version SET version = LAST_INSERT_ID(version + 1) WHERE id = 1");
+                try (ResultSet rs = st.executeQuery("SELECT LAST_INSERT_ID()")) {
+                    rs.next();
+                    return rs.getLong(1);
+                }
+            }
+        });
+        return next != null ? next : 0;
+    }
+
+    @Override
+    public long currentVersion() {
+        Long current = jdbcTemplate.queryForObject(
+                "SELECT version FROM presence_version WHERE id = 1", Long.class);
+        return current != null ? current : 0;
+    }
+
+    @Scheduled(fixedRateString = "${app.presence.lease-renew-ms:30000}")
+    public void renewLease() {
+        try {
+            jdbcTemplate.update("UPDATE presence_sessions SET last_seen = NOW() WHERE node_id = ?", nodeId);
+            int purged = jdbcTemplate.update(
+                    "DELETE FROM presence_sessions WHERE last_seen < TIMESTAMPADD(SECOND, ?, NOW())",
+                    -leaseTimeoutSeconds);
+            if (purged > 0) {
+                log.info("Purged {} presence sessions from lapsed nodes", purged);
+                nextVersion();
+            }
+        } catch (Exception e) {
+            log.warn("Presence lease renewal failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void releaseNode() {
+        try {
+            jdbcTemplate.update("DELETE FROM presence_sessions WHERE node_id = ?", nodeId);
+            nextVersion();
+        } catch (Exception e) {
+            log.warn("Failed to release presence sessions for node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    private String writeActivity(Activity activity) {
+        if (activity == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(activity);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private Activity readActivity(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, Activity.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package uk.co.visad.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * In-memory index of the legacy PHP-era upload tree under the old
+ * vault.visad.co.uk/uploads/documents/ folder. We only READ from there — never write.
+ *
+ * Maps a stored filename (relative to its category folder, e.g.
+ * "passport.pdf" or "2023/05/passport.pdf") to the file on disk, so the
+ * download fallback is one hash lookup instead of probing every folder.
+ * When the same name exists in several folders, the first folder in
+ * {@link #FOLDERS} wins, matching the old probe order.
+ *
+ * Built by a background scan at startup, kept current by a WatchService and
+ * rebuilt periodically as a safety net. The periodic rebuild walks the whole
+ * tree, so it runs on the index's own thread rather than Spring's shared
+ * scheduler, where it would stall every other @Scheduled task. If app.upload.legacy-index.file is
+ * set, the index is persisted there so a restart can serve lookups before
+ * the rescan finishes. Until an index is available, lookups probe the folders.
+ */
+@Service
+@Slf4j
+public class LegacyFileIndex {
+
+    static final List<String> FOLDERS = List.of("bookings", "evisa", "share_code", "flight", "hotel",
+            "insurance", "application", "appointment", "forms", "client_documents");
+
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    @Value("${app.upload.legacy-dir:/home/VisaD/visad.co.uk/vault.visad.co.uk/uploads/documents}")
+    private String legacyDir;
+
+    @Value("${app.upload.legacy-index.file:}")
+    private String indexFile;
+
+    @Value("${app.upload.legacy-index.rescan-ms:3600000}")
+    private long rescanMs;
+
+    private ScheduledExecutorService rescanner;
+
+    private Path legacyBase;
+    private volatile Map<String, Path> index = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private WatchService watchService;
+    // Key: WatchKey, Value: watched directory
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        legacyBase = Paths.get(legacyDir).normalize();
+        if (!Files.isDirectory(legacyBase)) {
+            log.info("Legacy upload dir {} not present, legacy index disabled", legacyBase);
+            ready = true;
+            return;
+        }
+        loadPersisted();
+
+        Thread indexer = new Thread(this::indexAndWatch, "legacy-index");
+        indexer.setDaemon(true);
+        indexer.start();
+
+        rescanner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "legacy-index-rescan");
+            t.setDaemon(true);
+            return t;
+        });
+        rescanner.scheduleWithFixedDelay(this::rescan, rescanMs, rescanMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void rescan() {
+        if (legacyBase != null && Files.isDirectory(legacyBase)) {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                // An escaping exception would cancel every later rescan
+                log.warn("Legacy file index rescan failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rescanner != null) {
+            rescanner.shutdownNow();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Failed to close legacy index watcher: {}", e.getMessage());
+            }
+        }
+        persist();
+    }
+
+    /**
+     * Looks up a legacy file by its stored name.
+     */
+    public Optional<Path> resolve(String filename) {
+        String key = normalize(filename);
+        if (key == null || legacyBase == null) {
+            return Optional.empty();
+        }
+        if (!ready) {
+            return probe(key);
+        }
+        return Optional.ofNullable(index.get(key));
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    // --- Scanning ---
+
+    private void indexAndWatch() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            log.warn("WatchService unavailable, legacy index relies on periodic rescans: {}", e.getMessage());
+        }
+        rebuild();
+        if (watchService != null) {
+            watchLoop();
+        }
+    }
+
+    private synchronized void rebuild() {
+        long started = System.currentTimeMillis();
+        Map<String, Path> fresh = new ConcurrentHashMap<>();
+        for (String folder : FOLDERS) {
+            Path folderRoot = legacyBase.resolve(folder);
+            if (Files.isDirectory(folderRoot)) {
+                scan(folderRoot, folderRoot, fresh);
+            }
+        }
+        index = fresh;
+        ready = true;
+        log.info("Legacy file index built: {} files in {} ms", fresh.size(), System.currentTimeMillis() - started);
+        persist();
+    }
+
+    private void scan(Path folderRoot, Path start, Map<String, Path> target) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    watch(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        target.putIfAbsent(keyOf(folderRoot, file), file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    log.debug("Skipping unreadable legacy path {}: {}", file, exc.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to scan legacy folder {}: {}", start, e.getMessage());
+        }
+    }
+
+    // --- Watching ---
+
+    private void watch(Path dir) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE), dir);
+        } catch (IOException | ClosedWatchServiceException e) {
+            log.debug("Cannot watch legacy dir {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    rebuild();
+                    continue;
+                }
+                if (dir != null) {
+                    onChange(dir.resolve((Path) event.context()));
+                }
+            }
+            if (!key.reset()) {
+                // Directory deleted: drop everything indexed under it
+                watchedDirs.remove(key);
+                if (dir != null) {
+                    index.values().removeIf(path -> path.startsWith(dir));
+                }
+            }
+        }
+    }
+
+    private void onChange(Path changed) {
+        Path folderRoot = folderRootOf(changed);
+        if (folderRoot == null) {
+            return;
+        }
+        if (Files.isDirectory(changed)) {
+            // New directory: index its contents and watch it (and its children)
+            Map<String, Path> added = new ConcurrentHashMap<>();
+            scan(folderRoot, changed, added);
+            added.keySet().forEach(this::refresh);
+        } else {
+            refresh(keyOf(folderRoot, changed));
+        }
+    }
+
+    /**
+     * Re-resolves one key against disk, honouring folder precedence.
+     */
+    private void refresh(String key) {
+        Optional<Path> found = probe(key);
+        if (found.isPresent()) {
+            index.put(key, found.get());
+        } else {
+            index.remove(key);
+        }
+    }
+
+    private Optional<Path> probe(String key) {
+        for (String folder : FOLDERS) {
+            Path candidate = legacyBase.resolve(folder).resolve(key).normalize();
+            if (candidate.startsWith(legacyBase) && Files.isRegularFile(candidate)) {
+                return Optional.of(candidate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Path folderRootOf(Path path) {
+        if (!path.startsWith(legacyBase) || path.equals(legacyBase)) {
+            return null;
+        }
+        Path folder = legacyBase.resolve(legacyBase.relativize(path).getName(0));
+        return FOLDERS.contains(folder.getFileName().toString()) ? folder : null;
+    }
+
+    private static String keyOf(Path folderRoot, Path file) {
+        return folderRoot.relativize(file).toString().replace('\\', '/');
+    }
+
+    private static String normalize(String filename) {
+        if (filename == null || filename.isBlank()) {
+            return null;
+        }
+        Path path = Paths.get(filename).normalize();
+        if (path.isAbsolute() || path.startsWith("..")) {
+            return null;
+        }
+        return path.toString().replace('\\', '/');
+    }
+
+    // --- Persistence ---
+    // Format (gzip): [int version][int count] then per entry [byte folder index][UTF key]
+
+    private void loadPersisted() {
+        if (indexFile == null || indexFile.isBlank() || !Files.exists(Paths.get(indexFile))) {
+            return;
+        }
+        Map<String, Path> loaded = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(Files.newInputStream(Paths.get(indexFile)))))) {
+            if (in.readInt() != FILE_FORMAT_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String folder = FOLDERS.get(in.readUnsignedByte());
+                String key = in.readUTF();
+                loaded.put(key, legacyBase.resolve(folder).resolve(key));
+            }
+            index = loaded;
+            ready = true;
+            log.info("Loaded legacy file index with {} entries from {}", count, indexFile);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            log.warn("Ignoring unreadable legacy index file {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private void persist() {
+        if (indexFile == null || indexFile.isBlank() || legacyBase == null) {
+            return;
+        }
+        Path target = Paths.get(indexFile);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Map<String, Path> snapshot = Map.copyOf(index);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp))))) {
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Path> entry : snapshot.entrySet()) {
+                String folder = legacyBase.relativize(entry.getValue()).getName(0).toString();
+                out.writeByte(FOLDERS.indexOf(folder));
+                out.writeUTF(entry.getKey());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to persist legacy file index: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to persist legacy file index: {}", e.getMessage());
+        }
+    }
+}
@@ -1,49 +1,173 @@
 package uk.co.visad.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import uk.co.visad.entity.LockerActivity;
-import uk.co.visad.entity.Traveler;
+import uk.co.visad.exception.UnauthorizedException;
 import uk.co.visad.repository.LockerActivityRepository;
-import uk.co.visad.repository.TravelerRepository;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Locker form activity feed.
+ *
+ * Activities are recorded after the caller's transaction commits: the event is
+ * broadcast to /topic/locker-activity (coalesced per traveler, see
+ * CoalescingBroadcaster), kept in an in-memory ring of the latest
+ * RECENT_SIZE events that serves getRecent, and queued for a background
+ * thread that writes locker_activities in JDBC batch INSERTs. As with
+ * AuditService, a full queue makes the caller write synchronously, a batch the
+ * database rejects is retried row by row, and pending events are flushed on
+ * shutdown.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class LockerActivityService {
 
+    private static final int RECENT_SIZE = 50;
+
+    private static final String INSERT_SQL = "INSERT INTO locker_activities " +
+            "(traveler_id, traveler_name, token, event_type, detail, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+
     private final LockerActivityRepository repo;
-    private final TravelerRepository travelerRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final LockerTokenResolver lockerTokenResolver;
+    private final CoalescingBroadcaster broadcaster;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.locker.activity.queue-capacity:5000}")
+    private int queueCapacity;
+
+    @Value("${app.locker.activity.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.locker.activity.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<LockerActivity> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    // Own transaction per write: callers may be in an afterCommit callback or have none at all
+    private TransactionTemplate writeTemplate;
+
+    // Newest first; events not yet written have no id
+    private final Deque<LockerActivity> recent = new ArrayDeque<>(RECENT_SIZE);
+
+    @PostConstruct
+    public void start() {
+        writeTemplate = new TransactionTemplate(transactionManager);
+        writeTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        // Seed the ring with what is already stored, so the feed survives restarts
+        List<LockerActivity> stored = repo.findTop50ByOrderByCreatedAtDesc();
+        synchronized (recent) {
+            stored.stream().limit(RECENT_SIZE).forEach(recent::addLast);
+        }
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::drainLoop, "locker-activity-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<LockerActivity> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("Flushing {} pending locker activities on shutdown", remaining.size());
+            writeBatch(remaining);
+        }
+    }
 
     /**
      * Records a locker form activity event:
-     * - Resolves the traveler by public URL token
-     * - Persists to locker_activities
-     * - Broadcasts to /topic/locker-activity for real-time admin notification
+     * - Resolves the traveler by public URL token (cached, see LockerTokenResolver)
+     * - Once the caller's transaction commits, broadcasts it to /topic/locker-activity
+     *   and queues it for locker_activities
      */
     public void record(String token, String eventType, String detail) {
-        Traveler traveler = travelerRepository.findByPublicUrlToken(token).orElse(null);
-        if (traveler == null) {
+        LockerTokenResolver.LockerRecord traveler;
+        try {
+            traveler = lockerTokenResolver.resolve(token);
+        } catch (UnauthorizedException e) {
+            traveler = null;
+        }
+        if (traveler == null || !traveler.isTraveler()) {
             log.warn("logActivity: unknown token '{}'", token.substring(0, Math.min(8, token.length())));
             return;
         }
 
         LockerActivity activity = LockerActivity.builder()
-                .travelerId(traveler.getId())
-                .travelerName(traveler.getFirstName() + " " + traveler.getLastName())
+                .travelerId(traveler.recordId())
+                .travelerName(traveler.firstName() + " " + traveler.lastName())
                 .token(token.substring(0, Math.min(8, token.length())))
                 .eventType(eventType)
-                .detail(detail)
+                // Coalesced autosaves can list many fields; the column holds 500
+                .detail(detail != null && detail.length() > 500 ? detail.substring(0, 497) + "..." : detail)
                 .createdAt(LocalDateTime.now())
                 .build();
-        repo.save(activity);
+
+        // Only report activity that actually committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(activity);
+                }
+            });
+        } else {
+            publish(activity);
+        }
+    }
+
+    /**
+     * The latest RECENT_SIZE activities, newest first.
+     */
+    public List<LockerActivity> getRecent() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    private void publish(LockerActivity activity) {
+        synchronized (recent) {
+            if (recent.size() == RECENT_SIZE) {
+                recent.removeLast();
+            }
+            recent.addFirst(activity);
+        }
 
         Map<String, Object> msg = Map.of(
                 "travelerId",   activity.getTravelerId(),
@@ -53,11 +177,74 @@ public class LockerActivityService {
                 "detail",       activity.getDetail() != null ? activity.getDetail() : "",
                 "timestamp",    activity.getCreatedAt().toString()
         );
-        messagingTemplate.convertAndSend("/topic/locker-activity", msg);
-        log.info("Locker activity [{}] {} – {}", eventType, activity.getTravelerName(), detail);
+        broadcaster.send("/topic/locker-activity", "LOCKER_ACTIVITY:" + activity.getTravelerId(), msg);
+        log.info("Locker activity [{}] {} – {}", activity.getEventType(), activity.getTravelerName(),
+                activity.getDetail());
+
+        boolean accepted = false;
+        if (running) {
+            try {
+                accepted = queue.offer(activity, offerTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!accepted) {
+            // Back-pressure: queue full (or shutting down) — the caller pays for its own write
+            log.warn("Locker activity queue full, writing synchronously");
+            writeBatch(List.of(activity));
+        }
     }
 
-    public List<LockerActivity> getRecent() {
-        return repo.findTop50ByOrderByCreatedAtDesc();
+    private void drainLoop() {
+        List<LockerActivity> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                LockerActivity first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<LockerActivity> batch) {
+        try {
+            // One transaction for the whole list, so a failed chunk also rolls back the
+            // chunks before it and the row-by-row retry cannot insert them twice
+            writeTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, batch, batchSize, LockerActivityService::bind));
+        } catch (Exception e) {
+            // One bad row fails the whole batch: retry row by row so only that row is lost
+            log.warn("Locker activity batch write failed, retrying {} rows individually: {}",
+                    batch.size(), e.getMessage());
+            for (LockerActivity activity : batch) {
+                try {
+                    writeTemplate.executeWithoutResult(status ->
+                            jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, activity)));
+                } catch (Exception rowError) {
+                    log.error("Failed to write locker activity [{}] for traveler {}",
+                            activity.getEventType(), activity.getTravelerId(), rowError);
+                }
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, LockerActivity activity) throws SQLException {
+        ps.setLong(1, activity.getTravelerId());
+        ps.setString(2, activity.getTravelerName());
+        ps.setString(3, activity.getToken());
+        ps.setString(4, activity.getEventType());
+        ps.setString(5, activity.getDetail());
+        ps.setTimestamp(6, Timestamp.valueOf(activity.getCreatedAt()));
     }
 }
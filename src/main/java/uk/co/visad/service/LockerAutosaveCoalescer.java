@@ -0,0 +1,292 @@
+package uk.co.visad.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.Column;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import uk.co.visad.entity.Dependent;
+import uk.co.visad.entity.Traveler;
+import uk.co.visad.entity.TravelerQuestions;
+import uk.co.visad.exception.BadRequestException;
+
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces locker (public portal) autosaves per token.
+ *
+ * The portal calls update_personal, update_questions and update_progress on
+ * nearly every keystroke. Changes are validated on the request thread (token,
+ * lock state, column length, date format) and buffered; everything a token changes within
+ * app.locker.autosave.window-ms is written by LockerService.applyAutosave as
+ * one transaction and one activity record, the latest value of each field
+ * winning. A token's pending changes are written before it is verified
+ * (page reload) or submitted, and all of them on shutdown.
+ *
+ * A write that fails on a database error is retried under any newer changes,
+ * up to app.locker.autosave.max-attempts times. A batch the database rejects
+ * as invalid is written field by field instead, so one bad value only loses
+ * itself and not the other changes buffered with it.
+ */
+@Component
+@Slf4j
+public class LockerAutosaveCoalescer {
+
+    private static final int LOCK_STRIPES = 64;
+
+    // Request field names are the column names, so limits come from the entities' @Column mappings
+    private static final Map<String, Integer> COLUMN_LENGTHS = new HashMap<>();
+    private static final Set<String> DATE_COLUMNS = new HashSet<>();
+
+    static {
+        for (Class<?> entity : List.of(Traveler.class, Dependent.class, TravelerQuestions.class)) {
+            for (Field field : entity.getDeclaredFields()) {
+                Column column = field.getAnnotation(Column.class);
+                if (column == null || column.name().isEmpty()) {
+                    continue;
+                }
+                if (field.getType() == String.class && column.columnDefinition().isEmpty()) {
+                    COLUMN_LENGTHS.merge(column.name(), column.length(), Math::min);
+                } else if (field.getType() == LocalDate.class) {
+                    DATE_COLUMNS.add(column.name());
+                }
+            }
+        }
+    }
+
+    private final LockerService lockerService;
+    private final LockerTokenResolver lockerTokenResolver;
+    private final ScheduledExecutorService scheduler;
+
+    @Value("${app.locker.autosave.window-ms:2000}")
+    private long windowMs;
+
+    @Value("${app.locker.autosave.max-attempts:3}")
+    private int maxAttempts;
+
+    // Key: token, Value: changes not yet written
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    // Writes for the same token never overlap, so an older batch cannot land after a newer one
+    private final Object[] writeLocks = new Object[LOCK_STRIPES];
+
+    public LockerAutosaveCoalescer(LockerService lockerService, LockerTokenResolver lockerTokenResolver,
+                                   @Value("${app.locker.autosave.workers:2}") int workers) {
+        this.lockerService = lockerService;
+        this.lockerTokenResolver = lockerTokenResolver;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            writeLocks[i] = new Object();
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "locker-autosave-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static class Pending {
+        final LinkedHashMap<String, String> personal = new LinkedHashMap<>();
+        final LinkedHashMap<String, Object> questions = new LinkedHashMap<>();
+        Integer progress;
+        int attempts;
+
+        /** Applies newer changes on top of these (newer values win). */
+        void absorb(Pending newer) {
+            newer.personal.forEach(this::putPersonal);
+            newer.questions.forEach(this::putQuestion);
+            if (newer.progress != null) {
+                progress = newer.progress;
+            }
+        }
+
+        void putPersonal(String field, String value) {
+            // Re-insert so the map stays ordered by most recent change
+            personal.remove(field);
+            personal.put(field, value);
+        }
+
+        void putQuestion(String field, Object value) {
+            questions.remove(field);
+            questions.put(field, value);
+        }
+    }
+
+    /**
+     * @throws uk.co.visad.exception.UnauthorizedException if the token is unknown
+     * @throws IllegalStateException if the application is locked
+     * @throws BadRequestException if the value cannot be stored
+     */
+    public void updatePersonal(String token, String field, String value) {
+        if (lockerTokenResolver.resolve(token).locked()) {
+            throw new IllegalStateException("Application is locked");
+        }
+        validate(field, value);
+        buffer(token, p -> p.putPersonal(field, value));
+    }
+
+    /**
+     * @throws uk.co.visad.exception.UnauthorizedException if the token is unknown
+     * @throws IllegalStateException if the application is locked (last_question_index alone is still accepted)
+     * @throws BadRequestException if a value cannot be stored
+     */
+    public void updateQuestions(String token, Map<String, Object> data) {
+        if (lockerTokenResolver.resolve(token).locked()
+                && !(data.size() == 1 && data.containsKey("last_question_index"))) {
+            throw new IllegalStateException("Application is locked");
+        }
+        data.forEach(LockerAutosaveCoalescer::validate);
+        buffer(token, p -> data.forEach(p::putQuestion));
+    }
+
+    public void updateProgress(String token, Integer percentage) {
+        lockerTokenResolver.resolve(token);
+        buffer(token, p -> p.progress = percentage);
+    }
+
+    /**
+     * Writes the token's pending changes on the calling thread.
+     */
+    public void flush(String token) {
+        synchronized (writeLock(token)) {
+            Pending batch = pending.remove(token);
+            if (batch != null) {
+                write(token, batch);
+            }
+        }
+    }
+
+    /**
+     * Writes pending changes, then submits and locks the application.
+     */
+    public void submit(String token) {
+        synchronized (writeLock(token)) {
+            flush(token);
+            lockerService.markApplicationComplete(token);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        List<String> tokens = new ArrayList<>(pending.keySet());
+        if (!tokens.isEmpty()) {
+            log.info("Flushing pending locker autosaves for {} tokens on shutdown", tokens.size());
+        }
+        tokens.forEach(this::flush);
+    }
+
+    /**
+     * Rejects a value its write would fail on, while the client can still be told.
+     */
+    private static void validate(String field, Object value) {
+        if (value == null) {
+            return;
+        }
+        String strValue = value.toString();
+        Integer maxLength = COLUMN_LENGTHS.get(field);
+        if (maxLength != null && strValue.length() > maxLength) {
+            throw new BadRequestException(field + " must be at most " + maxLength + " characters");
+        }
+        if (DATE_COLUMNS.contains(field)) {
+            try {
+                LocalDate.parse(strValue);
+            } catch (DateTimeParseException e) {
+                throw new BadRequestException("Invalid date for " + field + ": " + strValue);
+            }
+        }
+    }
+
+    private void buffer(String token, Consumer<Pending> change) {
+        pending.compute(token, (key, p) -> {
+            if (p == null) {
+                p = new Pending();
+                schedule(token);
+            }
+            change.accept(p);
+            return p;
+        });
+    }
+
+    private void schedule(String token) {
+        try {
+            scheduler.schedule(() -> flush(token), windowMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: shutdown() flushes whatever is still pending
+        }
+    }
+
+    private void write(String token, Pending batch) {
+        try {
+            lockerService.applyAutosave(token, batch.personal, batch.questions, batch.progress);
+        } catch (DataIntegrityViolationException e) {
+            // Retrying would fail the same way: write field by field so only the bad value is lost
+            log.warn("Locker autosave rejected, writing fields individually: token={}: {}",
+                    token, e.getMessage());
+            writeEachField(token, batch);
+        } catch (DataAccessException e) {
+            batch.attempts++;
+            if (batch.attempts >= maxAttempts) {
+                log.error("Dropping locker autosave after {} attempts: token={}, personal={}, questions={}",
+                        batch.attempts, token, batch.personal.keySet(), batch.questions.keySet(), e);
+                return;
+            }
+            log.warn("Locker autosave failed, retrying: token={}, attempt={}: {}",
+                    token, batch.attempts, e.getMessage());
+            pending.compute(token, (key, newer) -> {
+                if (newer == null) {
+                    schedule(token);
+                } else {
+                    batch.absorb(newer);
+                }
+                return batch;
+            });
+        } catch (Exception e) {
+            // Bad input, unknown token or locked application: retrying would fail the same way
+            log.error("Dropping locker autosave: token={}, personal={}, questions={}",
+                    token, batch.personal.keySet(), batch.questions.keySet(), e);
+        }
+    }
+
+    private void writeEachField(String token, Pending batch) {
+        batch.personal.forEach((field, value) -> writeField(token, field, () ->
+                lockerService.applyAutosave(token, Collections.singletonMap(field, value), Map.of(), null)));
+        batch.questions.forEach((field, value) -> writeField(token, field, () ->
+                lockerService.applyAutosave(token, Map.of(), Collections.singletonMap(field, value), null)));
+        if (batch.progress != null) {
+            writeField(token, "progress", () ->
+                    lockerService.applyAutosave(token, Map.of(), Map.of(), batch.progress));
+        }
+    }
+
+    private void writeField(String token, String field, Runnable write) {
+        try {
+            write.run();
+        } catch (Exception e) {
+            log.error("Dropping locker autosave field: token={}, field={}", token, field, e);
+        }
+    }
+
+    private Object writeLock(String token) {
+        return writeLocks[Math.floorMod(token.hashCode(), LOCK_STRIPES)];
+    }
+}
@@ -34,6 +34,7 @@ public class LockerService {
     private final TravelerQuestionsRepository travelerQuestionsRepository;
     private final ObjectMapper objectMapper;
     private final LockerActivityService lockerActivityService;
+    private final LockerTokenResolver lockerTokenResolver;
 
     private static final DateTimeFormatter DOB_FORMATTER = DateTimeFormatter.ofPattern("ddMMyyyy");
 
@@ -44,7 +45,11 @@ public class LockerService {
         log.debug("Verifying token: {}", token);
 
         // Find traveler record (Main Applicant)
-        Traveler traveler = travelerRepository.findByPublicUrlToken(token)
+        LockerTokenResolver.LockerRecord resolved = lockerTokenResolver.resolve(token);
+        if (!resolved.isTraveler()) {
+            throw new UnauthorizedException("Invalid token");
+        }
+        Traveler traveler = travelerRepository.findById(resolved.recordId())
                 .orElseThrow(() -> new UnauthorizedException("Invalid token"));
 
         // Verify password (DOB in DDMMYYYY format)
@@ -82,85 +87,68 @@ public class LockerService {
     }
 
     /**
-     * Update single personal field
-     */
-    public void updatePersonalField(String token, String field, String value) {
-        RecordWrapper record = findRecordByToken(token);
-
-        // Check if form is locked
-        if (record.questions != null && Boolean.TRUE.equals(record.questions.getFormComplete())) {
-            throw new IllegalStateException("Application is locked");
-        }
-
-        // Update field
-        updatePersonalFieldByName(record, field, value);
-
-        if (record.isTraveler) {
-            travelerRepository.save(record.traveler);
-        } else {
-            dependentRepository.save(record.dependent);
-        }
-
-        lockerActivityService.record(token, "PERSONAL_UPDATED", "Updated field: " + field);
-        log.info("Updated personal field: token={}, field={}", token, field);
-    }
-
-    /**
-     * Update multiple question fields
+     * Writes one coalesced batch of autosaved changes (see LockerAutosaveCoalescer):
+     * personal fields, question fields and progress are applied to freshly loaded
+     * rows, saved once, and recorded as a single activity.
+     *
+     * The lock is re-checked against the questions row: once the application is
+     * locked only last_question_index is still applied.
+     *
+     * @param personal  field -> value, in the order the fields were last changed
+     * @param questions field -> value, in the order the fields were last changed
+     * @param progress  latest progress percentage, or null if unchanged
      */
-    public void updateQuestionFields(String token, Map<String, Object> data) {
+    public void applyAutosave(String token, Map<String, String> personal, Map<String, Object> questions,
+                              Integer progress) {
         RecordWrapper record = findRecordByToken(token);
 
-        // If questions don't exist, create them
-        if (record.questions == null) {
+        boolean needsQuestions = !questions.isEmpty() || progress != null;
+        if (needsQuestions && record.questions() == null) {
             record.questions = createDefaultQuestions(record);
         }
-        TravelerQuestions questions = record.questions;
+        boolean locked = record.questions() != null
+                ? Boolean.TRUE.equals(record.questions().getFormComplete())
+                : record.resolved.locked();
 
-        // Check if form is locked
-        if (Boolean.TRUE.equals(questions.getFormComplete())) {
+        if (locked) {
             // Allow updating last_question_index even if locked
-            if (data.size() == 1 && data.containsKey("last_question_index")) {
-                // TravelerQuestions doesn't have lastQuestionIndex? Ignoring for now.
-                // Log debug or just return.
-                updateQuestionFieldByName(record, "last_question_index", data.get("last_question_index"));
-                travelerQuestionsRepository.save(questions);
-                return;
+            if (questions.containsKey("last_question_index")) {
+                updateQuestionFieldByName(record, "last_question_index", questions.get("last_question_index"));
+                travelerQuestionsRepository.save(record.questions());
             }
-            throw new IllegalStateException("Application is locked");
+            if (!personal.isEmpty() || questions.size() > (questions.containsKey("last_question_index") ? 1 : 0)
+                    || progress != null) {
+                log.warn("Discarded autosaved changes for locked application: token={}, fields={}",
+                        token, concat(personal.keySet(), questions.keySet()));
+            }
+            return;
         }
 
-        // Update fields
-        data.forEach((field, value) -> updateQuestionFieldByName(record, field, value));
+        personal.forEach((field, value) -> updatePersonalFieldByName(record, field, value));
+        questions.forEach((field, value) -> updateQuestionFieldByName(record, field, value));
+        if (progress != null) {
+            record.questions().setProgressPercentage(progress);
+        }
 
-        // Save the entity that was updated (Traveler/Dependent or Questions)
-        // Since we might update both, save both if needed.
-        // Optimally, we check what changed, but safely saving both is fine.
-        travelerQuestionsRepository.save(questions);
-        if (record.isTraveler) {
+        // Save only what was touched; the traveler/dependent is only loaded if one of its fields changed
+        if (needsQuestions) {
+            travelerQuestionsRepository.save(record.questions());
+        }
+        if (record.traveler != null) {
             travelerRepository.save(record.traveler);
-        } else {
+        } else if (record.dependent != null) {
             dependentRepository.save(record.dependent);
         }
 
-        lockerActivityService.record(token, "QUESTIONS_UPDATED", "Updated: " + String.join(", ", data.keySet()));
-        log.info("Updated question fields: token={}, fields={}", token, data.keySet());
-    }
-
-    /**
-     * Update progress percentage
-     */
-    public void updateProgress(String token, Integer percentage) {
-        RecordWrapper record = findRecordByToken(token);
-        if (record.questions == null) {
-            record.questions = createDefaultQuestions(record);
+        if (!questions.isEmpty()) {
+            lockerActivityService.record(token, "QUESTIONS_UPDATED",
+                    "Updated: " + String.join(", ", concat(personal.keySet(), questions.keySet())));
+        } else if (!personal.isEmpty()) {
+            lockerActivityService.record(token, "PERSONAL_UPDATED",
+                    "Updated field: " + String.join(", ", personal.keySet()));
         }
-        TravelerQuestions questions = record.questions;
-
-        questions.setProgressPercentage(percentage);
-        travelerQuestionsRepository.save(questions);
-
-        log.info("Updated progress: token={}, percentage={}", token, percentage);
+        log.info("Autosaved: token={}, personal={}, questions={}, progress={}",
+                token, personal.keySet(), questions.keySet(), progress);
     }
 
     /**
@@ -168,10 +156,10 @@ public class LockerService {
      */
     public void markApplicationComplete(String token) {
         RecordWrapper record = findRecordByToken(token);
-        if (record.questions == null) {
+        if (record.questions() == null) {
             record.questions = createDefaultQuestions(record);
         }
-        TravelerQuestions questions = record.questions;
+        TravelerQuestions questions = record.questions();
 
         questions.setFormComplete(true);
         questions.setProgressPercentage(100);
@@ -198,54 +186,77 @@ public class LockerService {
 
     // Helper methods and inner classes
 
-    private static class RecordWrapper {
-        boolean isTraveler;
+    /**
+     * Record behind a locker token. The token itself is resolved from cache;
+     * the traveler/dependent and questions rows are fetched by primary key
+     * only when a caller touches them.
+     */
+    private class RecordWrapper {
+        final LockerTokenResolver.LockerRecord resolved;
         Traveler traveler;
         Dependent dependent;
         TravelerQuestions questions;
+        boolean questionsLoaded;
+
+        RecordWrapper(LockerTokenResolver.LockerRecord resolved) {
+            this.resolved = resolved;
+        }
+
+        boolean isTraveler() {
+            return resolved.isTraveler();
+        }
+
+        Traveler traveler() {
+            if (traveler == null) {
+                traveler = travelerRepository.findById(resolved.recordId())
+                        .orElseThrow(() -> new UnauthorizedException("Invalid token"));
+            }
+            return traveler;
+        }
+
+        Dependent dependent() {
+            if (dependent == null) {
+                dependent = dependentRepository.findById(resolved.recordId())
+                        .orElseThrow(() -> new UnauthorizedException("Invalid token"));
+            }
+            return dependent;
+        }
+
+        TravelerQuestions questions() {
+            if (!questionsLoaded) {
+                questionsLoaded = true;
+                if (resolved.questionsId() != null) {
+                    questions = travelerQuestionsRepository.findById(resolved.questionsId()).orElse(null);
+                }
+            }
+            return questions;
+        }
 
         Long getId() {
-            return isTraveler ? traveler.getId() : dependent.getId();
+            return resolved.recordId();
         }
 
         String getType() {
-            return isTraveler ? "traveler" : "dependent";
+            return resolved.recordType();
         }
 
         String getFirstName() {
-            return isTraveler ? traveler.getFirstName() : dependent.getFirstName();
+            return resolved.firstName();
         }
 
         String getLastName() {
-            return isTraveler ? traveler.getLastName() : dependent.getLastName();
+            return resolved.lastName();
         }
     }
 
-    private RecordWrapper findRecordByToken(String token) {
-        RecordWrapper wrapper = new RecordWrapper();
-
-        Optional<Traveler> travelerOpt = travelerRepository.findByPublicUrlToken(token);
-        if (travelerOpt.isPresent()) {
-            wrapper.isTraveler = true;
-            wrapper.traveler = travelerOpt.get();
-            wrapper.questions = travelerQuestionsRepository
-                    .findByRecordIdAndRecordType(wrapper.traveler.getId(), "traveler")
-                    .orElse(null);
-            return wrapper;
-        }
-
-        Optional<Dependent> dependentOpt = dependentRepository.findByPublicUrlToken(token);
-        if (dependentOpt.isPresent()) {
-            wrapper.isTraveler = false;
-            wrapper.dependent = dependentOpt.get();
-            // Assuming dependents also have questions with record_type 'dependent'
-            wrapper.questions = travelerQuestionsRepository
-                    .findByRecordIdAndRecordType(wrapper.dependent.getId(), "dependent")
-                    .orElse(null);
-            return wrapper;
-        }
+    private static List<String> concat(Collection<String> first, Collection<String> second) {
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
 
-        throw new UnauthorizedException("Invalid token");
+    private RecordWrapper findRecordByToken(String token) {
+        return new RecordWrapper(lockerTokenResolver.resolve(token));
     }
 
     private TravelerQuestions createDefaultQuestions(Traveler traveler) {
@@ -407,8 +418,8 @@ public class LockerService {
     }
 
     private void updatePersonalFieldByName(RecordWrapper record, String field, String value) {
-        if (record.isTraveler) {
-            Traveler t = record.traveler;
+        if (record.isTraveler()) {
+            Traveler t = record.traveler();
             switch (field) {
                 case "contact_number":
                     t.setContactNumber(value);
@@ -441,7 +452,7 @@ public class LockerService {
                     log.warn("Unknown personal field: {}", field);
             }
         } else {
-            Dependent d = record.dependent;
+            Dependent d = record.dependent();
             switch (field) {
                 case "contact_number":
                     d.setContactNumber(value);
@@ -477,7 +488,7 @@ public class LockerService {
     }
 
     private void updateQuestionFieldByName(RecordWrapper record, String field, Object value) {
-        TravelerQuestions questions = record.questions;
+        TravelerQuestions questions = record.questions();
         String strValue = value != null ? value.toString() : null;
 
         switch (field) {
@@ -487,16 +498,16 @@ public class LockerService {
 
             // These belong to Traveler/Dependent
             case "place_of_birth":
-                if (record.isTraveler)
-                    record.traveler.setPlaceOfBirth(strValue);
+                if (record.isTraveler())
+                    record.traveler().setPlaceOfBirth(strValue);
                 else
-                    record.dependent.setPlaceOfBirth(strValue);
+                    record.dependent().setPlaceOfBirth(strValue);
                 break;
             case "country_of_birth":
-                if (record.isTraveler)
-                    record.traveler.setCountryOfBirth(strValue);
+                if (record.isTraveler())
+                    record.traveler().setCountryOfBirth(strValue);
                 else
-                    record.dependent.setCountryOfBirth(strValue);
+                    record.dependent().setCountryOfBirth(strValue);
                 break;
 
             case "travel_covered_by":
@@ -0,0 +1,185 @@
+package uk.co.visad.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.co.visad.exception.UnauthorizedException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Resolves locker (public portal) tokens to the record they belong to.
+ *
+ * A token is looked up once with a single indexed query covering travelers,
+ * dependents and the record's traveler_questions row; the result (record
+ * type/id, owning traveler, questions id and lock state) is cached, bounded by
+ * app.locker.token-cache.max-size and ttl-ms. Unknown tokens are not cached.
+ * Writes to travelers, dependents and traveler_questions update or evict the
+ * affected entries (see LockerTokenInvalidationListener), so token changes,
+ * renames and locking/unlocking take effect immediately.
+ */
+@Service
+@Slf4j
+public class LockerTokenResolver {
+
+    private static final String RESOLVE_SQL =
+            "SELECT 'traveler' AS record_type, t.id AS record_id, t.id AS traveler_id, t.first_name, t.last_name, " +
+            "q.id AS questions_id, q.form_complete " +
+            "FROM travelers t LEFT JOIN traveler_questions q ON q.record_id = t.id AND q.record_type = 'traveler' " +
+            "WHERE t.public_url_token = ? " +
+            "UNION ALL " +
+            "SELECT 'dependent', d.id, d.traveler_id, d.first_name, d.last_name, q.id, q.form_complete " +
+            "FROM dependents d LEFT JOIN traveler_questions q ON q.record_id = d.id AND q.record_type = 'dependent' " +
+            "WHERE d.public_url_token = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<String, LockerRecord> cache;
+
+    public LockerTokenResolver(JdbcTemplate jdbcTemplate,
+                               @Value("${app.locker.token-cache.max-size:5000}") long maxSize,
+                               @Value("${app.locker.token-cache.ttl-ms:900000}") long ttlMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    /**
+     * @param recordType  "traveler" or "dependent"
+     * @param travelerId  the main traveler (the record itself for travelers)
+     * @param questionsId traveler_questions id, null until the questions row exists
+     */
+    public record LockerRecord(String recordType, Long recordId, Long travelerId, String firstName,
+                               String lastName, Long questionsId, boolean locked) {
+
+        public boolean isTraveler() {
+            return "traveler".equals(recordType);
+        }
+    }
+
+    /**
+     * @throws UnauthorizedException if no traveler or dependent has this token
+     */
+    public LockerRecord resolve(String token) {
+        if (token == null || token.isBlank()) {
+            throw new UnauthorizedException("Invalid token");
+        }
+        LockerRecord record = cache.getIfPresent(token);
+        if (record == null) {
+            record = load(token);
+            if (record == null) {
+                throw new UnauthorizedException("Invalid token");
+            }
+            cache.put(token, record);
+        }
+        return record;
+    }
+
+    /**
+     * Called after a traveler or dependent is saved. Entries are only touched when
+     * the token or name actually changed, so ordinary autosaves keep the cache warm.
+     */
+    public void onRecordSaved(String recordType, Long recordId, String token, String firstName, String lastName) {
+        boolean changed = false;
+        for (Map.Entry<String, LockerRecord> entry : cache.asMap().entrySet()) {
+            LockerRecord r = entry.getValue();
+            if (!r.recordId().equals(recordId) || !r.recordType().equals(recordType)) {
+                continue;
+            }
+            if (!entry.getKey().equals(token)) {
+                // Token regenerated: the old one must stop resolving
+                cache.asMap().remove(entry.getKey(), r);
+                changed = true;
+            } else if (!Objects.equals(r.firstName(), firstName) || !Objects.equals(r.lastName(), lastName)) {
+                cache.asMap().replace(entry.getKey(), r, new LockerRecord(r.recordType(), r.recordId(),
+                        r.travelerId(), firstName, lastName, r.questionsId(), r.locked()));
+                changed = true;
+            }
+        }
+        if (changed) {
+            evictOnRollback(recordType, recordId);
+        }
+    }
+
+    /**
+     * Called after a traveler_questions row is saved (created, locked or unlocked).
+     */
+    public void onQuestionsSaved(String recordType, Long recordId, Long questionsId, boolean locked) {
+        boolean changed = false;
+        for (Map.Entry<String, LockerRecord> entry : cache.asMap().entrySet()) {
+            LockerRecord r = entry.getValue();
+            if (r.recordId().equals(recordId) && r.recordType().equals(recordType)
+                    && (!Objects.equals(r.questionsId(), questionsId) || r.locked() != locked)) {
+                cache.asMap().replace(entry.getKey(), r, new LockerRecord(r.recordType(), r.recordId(),
+                        r.travelerId(), r.firstName(), r.lastName(), questionsId, locked));
+                changed = true;
+            }
+        }
+        if (changed) {
+            evictOnRollback(recordType, recordId);
+        }
+    }
+
+    /**
+     * Evicts every cached token of the record (and, for a traveler, of its dependents).
+     */
+    public void invalidate(String recordType, Long recordId) {
+        if (recordId == null) {
+            return;
+        }
+        evict(recordType, recordId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(recordType, recordId);
+                }
+            });
+        }
+    }
+
+    private void evictOnRollback(String recordType, Long recordId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        evict(recordType, recordId);
+                    }
+                }
+            });
+        }
+    }
+
+    private void evict(String recordType, Long recordId) {
+        if ("traveler".equals(recordType)) {
+            // Also drops the traveler's dependents (deleted with it by ON DELETE CASCADE)
+            cache.asMap().values().removeIf(r -> r.travelerId().equals(recordId));
+        } else {
+            cache.asMap().values().removeIf(r -> r.recordId().equals(recordId) && r.recordType().equals(recordType));
+        }
+    }
+
+    private LockerRecord load(String token) {
+        List<LockerRecord> found = jdbcTemplate.query(RESOLVE_SQL, (rs, rowNum) -> new LockerRecord(
+                rs.getString("record_type"),
+                rs.getLong("record_id"),
+                rs.getLong("traveler_id"),
+                rs.getString("first_name"),
+                rs.getString("last_name"),
+                rs.getObject("questions_id", Long.class),
+                rs.getBoolean("form_complete")), token, token);
+        // A traveler token wins over a dependent with the same token
+        return found.stream().filter(LockerRecord::isTraveler).findFirst()
+                .orElse(found.isEmpty() ? null : found.get(0));
+    }
+}
@@ -1,14 +1,209 @@
 package uk.co.visad.service;
 
+import com.openhtmltopdf.extend.impl.FSDefaultCacheStore;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
+import uk.co.visad.dto.EmailInvoiceRequest;
+import uk.co.visad.util.PdfTemplate;
+
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Shared PDF renderer for invoices and simple documents.
+ *
+ * Templates (templates/pdf/*.html) and the shared stylesheet are loaded and
+ * parsed once at startup; each render only fills placeholders. Font files
+ * from app.pdf.font-dir are read once and handed to every renderer from
+ * memory, and font metrics are kept in a cache store shared across renders.
+ * At most app.pdf.max-concurrent renders run at once so a burst of invoices
+ * cannot exhaust the heap; callers wait up to app.pdf.acquire-timeout-ms.
+ */
 @Service
+@Slf4j
 public class PdfService {
 
-    public ByteArrayInputStream generatePdf(String content) {
-        // Stub implementation
-        // In a real app, use iText or PDFBox
-        return new ByteArrayInputStream(("PDF Content for: " + content).getBytes());
+    private static final String TEMPLATE_DIR = "templates/pdf/";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("d MMM yyyy");
+
+    @Value("${app.pdf.font-dir:}")
+    private String fontDir;
+
+    @Value("${app.pdf.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${app.pdf.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMs;
+
+    private PdfTemplate invoiceTemplate;
+    private PdfTemplate itemsTemplate;
+    private PdfTemplate itemTemplate;
+    private PdfTemplate discountTemplate;
+    private PdfTemplate documentTemplate;
+    private String css;
+
+    // Key: font family (file name without extension), Value: font file bytes
+    private final Map<String, byte[]> fonts = new LinkedHashMap<>();
+    private final FSDefaultCacheStore fontMetricsCache = new FSDefaultCacheStore();
+    private Semaphore renderPermits;
+
+    @PostConstruct
+    public void init() throws IOException {
+        css = load("pdf.css");
+        invoiceTemplate = PdfTemplate.parse(load("invoice.html"));
+        itemsTemplate = PdfTemplate.parse(load("invoice-items.html"));
+        itemTemplate = PdfTemplate.parse(load("invoice-item.html"));
+        discountTemplate = PdfTemplate.parse(load("invoice-discount.html"));
+        documentTemplate = PdfTemplate.parse(load("document.html"));
+        loadFonts();
+        renderPermits = new Semaphore(Math.max(1, maxConcurrent), true);
+        log.info("PDF renderer ready: {} fonts, max {} concurrent renders", fonts.size(), Math.max(1, maxConcurrent));
+    }
+
+    // -------------------------------------------------------------------------
+    // Invoices
+    // -------------------------------------------------------------------------
+
+    public byte[] renderInvoice(EmailInvoiceRequest request) {
+        return render(buildInvoiceHtml(request));
+    }
+
+    String buildInvoiceHtml(EmailInvoiceRequest request) {
+        boolean isTInvoice = "send_t_invoice".equals(request.getAction());
+        Map<String, String> values = new HashMap<>();
+        values.put("css", css);
+        values.put("invoiceNumber", request.getInvoiceNumber());
+        values.put("date", LocalDateTime.now().format(DATE_FORMAT));
+        values.put("amountLabel", isTInvoice ? "Amount Paid" : "Amount Due");
+        values.put("total", request.getTotal());
+        values.put("statusBadge", isTInvoice
+                ? "<span class=\"badge badge-paid\">&#10003; PAID</span>"
+                : "<span class=\"badge badge-unpaid\">PENDING</span>");
+        values.put("customerName", request.getCustomerName());
+        values.put("customerAddress", request.getCustomerAddress());
+        values.put("customerEmail", request.getCustomerEmail());
+        values.put("subtotal", request.getSubtotal());
+
+        if (request.getInvoiceItems() != null && !request.getInvoiceItems().isEmpty()) {
+            StringBuilder rows = new StringBuilder();
+            Map<String, String> row = new HashMap<>();
+            for (EmailInvoiceRequest.EmailItemDto item : request.getInvoiceItems()) {
+                String desc = item.getName() == null ? "" : item.getName();
+                if (item.getPackage_() != null) desc += " - " + item.getPackage_();
+                if (item.getVisaType() != null) desc += " " + item.getVisaType();
+                if (item.getCountry() != null) desc += " - " + item.getCountry();
+                row.put("description", desc);
+                row.put("price", item.getPrice());
+                rows.append(itemTemplate.render(row));
+            }
+            values.put("items", itemsTemplate.render(Map.of("rows", rows.toString())));
+        }
+
+        String discountAmount = request.getDiscountAmount();
+        if (discountAmount != null && !discountAmount.equals("0") && !discountAmount.equals("0.00")) {
+            String discLabel = "Discount";
+            if (request.getDiscountPercent() != null && !request.getDiscountPercent().equals("0")) {
+                discLabel += " (" + request.getDiscountPercent() + "%)";
+            }
+            values.put("discount", discountTemplate.render(Map.of("label", discLabel, "amount", discountAmount)));
+        }
+        return invoiceTemplate.render(values);
+    }
+
+    // -------------------------------------------------------------------------
+    // Simple documents
+    // -------------------------------------------------------------------------
+
+    public byte[] renderDocument(String title) {
+        Map<String, String> values = new HashMap<>();
+        values.put("css", css);
+        values.put("title", title);
+        values.put("date", LocalDateTime.now().format(DATE_FORMAT));
+        return render(documentTemplate.render(values));
+    }
+
+    // -------------------------------------------------------------------------
+    // Rendering
+    // -------------------------------------------------------------------------
+
+    /**
+     * Renders well-formed XHTML to PDF, waiting for a free render slot.
+     *
+     * @throws IllegalStateException if no slot frees up within the timeout
+     */
+    public byte[] render(String html) {
+        boolean acquired;
+        try {
+            acquired = renderPermits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for PDF renderer");
+        }
+        if (!acquired) {
+            throw new IllegalStateException("PDF renderer busy, try again shortly");
+        }
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream(32 * 1024)) {
+            PdfRendererBuilder builder = new PdfRendererBuilder();
+            builder.useFastMode();
+            builder.useCacheStore(PdfRendererBuilder.CacheStore.PDF_FONT_METRICS, fontMetricsCache);
+            for (Map.Entry<String, byte[]> font : fonts.entrySet()) {
+                byte[] data = font.getValue();
+                builder.useFont(() -> new ByteArrayInputStream(data), font.getKey());
+            }
+            builder.withHtmlContent(html, null);
+            builder.toStream(baos);
+            builder.run();
+            return baos.toByteArray();
+        } catch (Exception e) {
+            log.error("Failed to generate PDF", e);
+            throw new RuntimeException("PDF generation failed: " + e.getMessage());
+        } finally {
+            renderPermits.release();
+        }
+    }
+
+    // --- Helpers ---
+
+    private static String load(String name) throws IOException {
+        try (InputStream in = new ClassPathResource(TEMPLATE_DIR + name).getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void loadFonts() {
+        if (fontDir == null || fontDir.isBlank()) {
+            return;
+        }
+        Path dir = Paths.get(fontDir);
+        if (!Files.isDirectory(dir)) {
+            log.warn("PDF font dir {} not found, using built-in fonts", dir);
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{ttf,TTF}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                fonts.put(name.substring(0, name.lastIndexOf('.')), Files.readAllBytes(file));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to load PDF fonts from {}: {}", dir, e.getMessage());
+        }
     }
 }
@@ -6,11 +6,11 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import uk.co.visad.model.presence.Activity;
+import uk.co.visad.model.presence.SessionExpiryWheel;
 import uk.co.visad.model.presence.SessionState;
 import uk.co.visad.model.presence.UserPresence;
 
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -21,8 +21,10 @@ import java.util.stream.Collectors;
 public class PresenceService {
 
     private final SimpMessagingTemplate messagingTemplate;
-    
-    // Key: UserId, Value: UserPresence
+    private final CoalescingBroadcaster broadcaster;
+    private final PresenceStore presenceStore;
+
+    // Sessions connected to THIS node. Key: UserId, Value: UserPresence
     private final Map<String, UserPresence> presences = new ConcurrentHashMap<>();
     
     // Reverse lookup: Key: SessionId, Value: UserId
@@ -30,52 +32,98 @@ public class PresenceService {
 
     private static final long HEARTBEAT_TIMEOUT_SECONDS = 90;
 
+    // Guards presence mutations so each version maps to exactly one delta
+    private final Object versionLock = new Object();
+
+    // Heartbeat deadlines: 1 s ticks, one rotation (128 s) longer than the timeout
+    private final SessionExpiryWheel expiryWheel =
+            new SessionExpiryWheel(128, 1000, HEARTBEAT_TIMEOUT_SECONDS * 1000);
+
+    private Map<String, Object> cachedSnapshot;
+    private long cachedSnapshotVersion = -1;
+
+    /**
+     * Presence is versioned: every change visible in the snapshot (session added or
+     * removed, activity changed) bumps the version and is broadcast as a single O(1)
+     * delta carrying that version. Clients apply deltas in order and, on seeing a
+     * version gap, ask for a fresh snapshot via /app/presence/resync.
+     *
+     * Local maps track this node's sessions (expiry, lookups); the cluster-wide view
+     * used for snapshots, counts and versions comes from the PresenceStore.
+     */
     public void registerSession(String sessionId, String userId, String username) {
         log.info("Registering session: {} for user: {}", sessionId, username);
-        presences.compute(userId, (key, existing) -> {
-            if (existing == null) {
-                existing = new UserPresence(userId, username);
-            }
-            existing.addSession(new SessionState(sessionId, userId, username));
-            return existing;
-        });
-        sessionUserMap.put(sessionId, userId);
+        synchronized (versionLock) {
+            SessionState session = new SessionState(sessionId, userId, username);
+            presences.compute(userId, (key, existing) -> {
+                if (existing == null) {
+                    existing = new UserPresence(userId, username);
+                }
+                existing.addSession(session);
+                return existing;
+            });
+            sessionUserMap.put(sessionId, userId);
+            presenceStore.saveSession(session);
+            expiryWheel.arm(sessionId, System.currentTimeMillis());
 
-        broadcastUpdate(userId, sessionId, "CONNECTED", null);
+            broadcastDelta(userId, sessionId, "CONNECTED", null, username);
+        }
     }
 
     public void removeSession(String sessionId) {
-        String userId = sessionUserMap.remove(sessionId);
-        if (userId != null) {
-            log.info("Removing session: {} for user: {}", sessionId, userId);
-            // Track whether this user went fully offline so we can broadcast AFTER map removal
-            final String[] offlineUsername = {null};
-            presences.computeIfPresent(userId, (key, userPresence) -> {
-                userPresence.removeSession(sessionId);
-                if (!userPresence.isOnline()) {
-                    offlineUsername[0] = userPresence.getUsername();
-                    return null; // Remove user from map
-                }
-                return userPresence;
-            });
-            // Broadcast AFTER removal so activeUserCount/activeUsernames are accurate
-            if (offlineUsername[0] != null) {
-                broadcastUpdate(userId, sessionId, "OFFLINE", null, offlineUsername[0]);
+        expiryWheel.disarm(sessionId);
+        synchronized (versionLock) {
+            Map<String, Object> removed = detachSession(sessionId);
+            if (removed != null) {
+                // Broadcast AFTER removal so activeUserCount is accurate
+                broadcastDelta((String) removed.get("userId"), sessionId,
+                        Boolean.TRUE.equals(removed.get("offline")) ? "OFFLINE" : "SESSION_CLOSED",
+                        null, (String) removed.get("username"));
             }
         }
     }
 
+    // Caller holds versionLock. Returns userId/sessionId/username/offline, or null if unknown.
+    private Map<String, Object> detachSession(String sessionId) {
+        String userId = sessionUserMap.remove(sessionId);
+        if (userId == null) {
+            return null;
+        }
+        log.info("Removing session: {} for user: {}", sessionId, userId);
+        UserPresence userPresence = presences.get(userId);
+        if (userPresence == null) {
+            return null;
+        }
+        userPresence.removeSession(sessionId);
+        if (!userPresence.isOnline()) {
+            presences.remove(userId);
+        }
+        presenceStore.removeSession(sessionId);
+        // The user may still be connected through another node
+        boolean offline = !presenceStore.isUserOnline(userId);
+        Map<String, Object> removed = new HashMap<>();
+        removed.put("userId", userId);
+        removed.put("sessionId", sessionId);
+        removed.put("username", userPresence.getUsername());
+        removed.put("offline", offline);
+        return removed;
+    }
+
     public void updateActivity(String sessionId, Activity activity) {
-        String userId = sessionUserMap.get(sessionId);
-        if (userId != null) {
-            UserPresence userPresence = presences.get(userId);
-            if (userPresence != null) {
-                SessionState session = userPresence.getSessions().get(sessionId);
-                if (session != null) {
-                    session.setCurrentActivity(activity);
-                    session.setLastHeartbeat(Instant.now());
-                    
-                    broadcastUpdate(userId, sessionId, "ACTIVITY", activity);
+        synchronized (versionLock) {
+            String userId = sessionUserMap.get(sessionId);
+            if (userId != null) {
+                UserPresence userPresence = presences.get(userId);
+                if (userPresence != null) {
+                    SessionState session = userPresence.getSessions().get(sessionId);
+                    if (session != null) {
+                        session.setCurrentActivity(activity);
+                        session.setLastHeartbeat(Instant.now());
+                        expiryWheel.arm(sessionId, System.currentTimeMillis());
+                        presenceStore.saveSession(session);
+
+                        broadcastDelta(userId, sessionId, "ACTIVITY", activity, userPresence.getUsername());
+                    }
                 }
             }
         }
@@ -89,102 +137,133 @@ public class PresenceService {
                 SessionState session = userPresence.getSessions().get(sessionId);
                 if (session != null) {
                     session.setLastHeartbeat(Instant.now());
+                    expiryWheel.arm(sessionId, System.currentTimeMillis());
                 }
             }
         }
     }
 
+    /**
+     * Full presence state tagged with the current version. Rebuilt only when the
+     * version has moved since the last call.
+     */
     public Map<String, Object> getSnapshot() {
-        Map<String, Object> snapshot = new HashMap<>();
-        snapshot.put("type", "SNAPSHOT");
-        
-        List<Map<String, Object>> userList = new ArrayList<>();
-        
-        presences.values().forEach(up -> {
-            Map<String, Object> userData = new HashMap<>();
-            userData.put("userId", up.getUserId());
-            userData.put("username", up.getUsername());
-            userData.put("status", "ONLINE"); // Simplified for MVP
-            
-            List<Map<String, Object>> activities = up.getSessions().values().stream()
-                    .map(s -> {
-                        Map<String, Object> act = new HashMap<>();
-                        act.put("sessionId", s.getSessionId());
-                        act.put("activity", s.getCurrentActivity());
-                        return act;
-                    }).collect(Collectors.toList());
-            
-            userData.put("activities", activities);
-            userList.add(userData);
-        });
-        
-        snapshot.put("users", userList);
-        snapshot.put("activeUserCount", getActiveUserCount());
-        snapshot.put("activeUsernames", getActiveUsernames());
-        return snapshot;
+        synchronized (versionLock) {
+            long current = presenceStore.currentVersion();
+            if (cachedSnapshot != null && cachedSnapshotVersion == current) {
+                return cachedSnapshot;
+            }
+
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("type", "SNAPSHOT");
+            snapshot.put("version", current);
+
+            // Cluster-wide sessions grouped by user
+            Map<String, Map<String, Object>> users = new LinkedHashMap<>();
+            for (SessionState s : presenceStore.findAllSessions()) {
+                Map<String, Object> userData = users.computeIfAbsent(s.getUserId(), id -> {
+                    Map<String, Object> data = new HashMap<>();
+                    data.put("userId", id);
+                    data.put("username", s.getUsername());
+                    data.put("status", "ONLINE"); // Simplified for MVP
+                    data.put("activities", new ArrayList<Map<String, Object>>());
+                    return data;
+                });
+                Map<String, Object> act = new HashMap<>();
+                act.put("sessionId", s.getSessionId());
+                act.put("activity", s.getCurrentActivity());
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> activities = (List<Map<String, Object>>) userData.get("activities");
+                activities.add(act);
+            }
+
+            snapshot.put("users", new ArrayList<>(users.values()));
+            snapshot.put("activeUserCount", users.size());
+            snapshot.put("activeUsernames", users.values().stream()
+                    .map(u -> (String) u.get("username"))
+                    .collect(Collectors.toList()));
+
+            cachedSnapshot = Collections.unmodifiableMap(snapshot);
+            cachedSnapshotVersion = current;
+            return cachedSnapshot;
+        }
     }
-    
+
     public void sendSnapshotToUser(String username) {
         // Send to specific user queue
         messagingTemplate.convertAndSendToUser(username, "/queue/presence", getSnapshot());
     }
 
+    public long getVersion() {
+        return presenceStore.currentVersion();
+    }
+
     /**
-     * Stateful count of distinct connected users — derived from the presences map.
-     * Included in every broadcast so all clients stay in sync.
+     * Count of distinct connected users across all nodes.
+     * Included in every delta so clients can cross-check their local state.
      */
     public int getActiveUserCount() {
-        return presences.size();
+        return presenceStore.countOnlineUsers();
     }
 
     public List<String> getActiveUsernames() {
-        return presences.values().stream()
-                .map(UserPresence::getUsername)
+        return presenceStore.findAllSessions().stream()
+                .map(SessionState::getUsername)
+                .distinct()
                 .collect(Collectors.toList());
     }
 
-    private void broadcastUpdate(String userId, String sessionId, String status, Activity activity) {
-        broadcastUpdate(userId, sessionId, status, activity, null);
-    }
-
-    private void broadcastUpdate(String userId, String sessionId, String status, Activity activity, String explicitUsername) {
+    // Must be called while holding versionLock so versions reach the broadcaster in order
+    private void broadcastDelta(String userId, String sessionId, String status, Activity activity,
+            String username) {
         Map<String, Object> update = new HashMap<>();
         update.put("type", "UPDATE");
+        update.put("version", presenceStore.nextVersion());
         update.put("userId", userId);
         update.put("sessionId", sessionId);
         update.put("status", status);
-        // Include username — use explicit if provided (user already removed from map), else look up
-        if (explicitUsername != null) {
-            update.put("username", explicitUsername);
-        } else {
-            UserPresence up = presences.get(userId);
-            if (up != null) {
-                update.put("username", up.getUsername());
-            }
-        }
+        update.put("username", username);
         if (activity != null) {
             update.put("activity", activity);
         }
-
-        // Always include authoritative active-user count + names
         update.put("activeUserCount", getActiveUserCount());
-        update.put("activeUsernames", getActiveUsernames());
 
-        messagingTemplate.convertAndSend("/topic/presence", update);
+        // Batched with other presence traffic but never collapsed: every version must reach clients
+        broadcaster.send("/topic/presence", null, update);
     }
 
-    @Scheduled(fixedRate = 60000) // Run every minute
-    public void performCleanup() {
-        log.debug("Running presence cleanup task");
-        Instant now = Instant.now();
-        
-        presences.values().forEach(userPresence -> {
-            List<String> expiredSessions = userPresence.getSessions().values().stream()
-                    .filter(s -> ChronoUnit.SECONDS.between(s.getLastHeartbeat(), now) > HEARTBEAT_TIMEOUT_SECONDS)
-                    .map(SessionState::getSessionId)
-                    .collect(Collectors.toList());
-            
-            expiredSessions.forEach(this::removeSession);
-        });
+    /**
+     * Advances the expiry wheel once a second. Only sessions whose heartbeat
+     * deadline has passed are touched, and all of them go out in one delta.
+     */
+    @Scheduled(fixedRate = 1000)
+    public void expireStaleSessions() {
+        List<String> expired = expiryWheel.advance(System.currentTimeMillis());
+        if (expired.isEmpty()) {
+            return;
+        }
+        log.debug("Expiring {} stale presence sessions", expired.size());
+
+        synchronized (versionLock) {
+            List<Map<String, Object>> removed = new ArrayList<>();
+            for (String sessionId : expired) {
+                Map<String, Object> entry = detachSession(sessionId);
+                if (entry != null) {
+                    removed.add(entry);
+                }
+            }
+            if (removed.isEmpty()) {
+                return;
+            }
+
+            Map<String, Object> update = new HashMap<>();
+            update.put("type", "UPDATE");
+            update.put("version", presenceStore.nextVersion());
+            update.put("status", "EXPIRED");
+            update.put("sessions", removed);
+            update.put("activeUserCount", getActiveUserCount());
+
+            broadcaster.send("/topic/presence", null, update);
+        }
     }
 }
@@ -0,0 +1,37 @@
+package uk.co.visad.service;
+
+import uk.co.visad.model.presence.SessionState;
+
+import java.util.List;
+
+/**
+ * Cluster-wide presence state behind PresenceService.
+ *
+ * Each node registers its own WebSocket sessions here; snapshots, online
+ * checks and the presence version are read from the store so every node
+ * sees the same picture. The in-memory implementation is the single-node
+ * default (and the stand-in for tests); the JDBC one shares state across
+ * nodes through the database.
+ */
+public interface PresenceStore {
+
+    /**
+     * Inserts the session or updates its activity.
+     */
+    void saveSession(SessionState session);
+
+    void removeSession(String sessionId);
+
+    boolean isUserOnline(String userId);
+
+    List<SessionState> findAllSessions();
+
+    int countOnlineUsers();
+
+    /**
+     * Atomically increments and returns the shared presence version.
+     */
+    long nextVersion();
+
+    long currentVersion();
+}
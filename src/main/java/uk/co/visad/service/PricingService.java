@@ -0,0 +1,216 @@
+package uk.co.visad.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.co.visad.entity.Dependent;
+import uk.co.visad.entity.PackagePricing;
+import uk.co.visad.entity.Traveler;
+import uk.co.visad.repository.PackagePricingRepository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Prices invoice line items from the package_pricing table.
+ *
+ * The active rows are loaded into an immutable snapshot keyed by normalised
+ * (package, country, visa type), so pricing a line is a hash lookup rather
+ * than a chain of string matches. Rows with a country and/or visa type
+ * override the package's base row; the most specific match wins. Packages
+ * missing from the table fall back to the built-in prices below. The snapshot
+ * is reloaded when the table changes (checked every app.pricing.refresh-ms)
+ * or when {@link #reload()} is called.
+ *
+ * Both the invoice view and the save-all-invoices batch quote through here,
+ * so they always agree on totals.
+ */
+@Service
+@Slf4j
+public class PricingService {
+
+    public static final String DEFAULT_PACKAGE = "Standard Package";
+    private static final BigDecimal DEFAULT_PRICE = new BigDecimal("149.00");
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Prices used before package_pricing had rows; table rows take precedence
+    private static final Map<String, BigDecimal> BUILT_IN_PRICES = Map.of(
+            "appointment only", new BigDecimal("99.00"),
+            "full support", new BigDecimal("149.00"),
+            "fast track appointment", new BigDecimal("199.00"),
+            "fast track full support", new BigDecimal("349.00"));
+
+    private final PackagePricingRepository packagePricingRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final InvoiceViewCache invoiceViewCache;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile String version;
+
+    public PricingService(PackagePricingRepository packagePricingRepository, JdbcTemplate jdbcTemplate,
+                          InvoiceViewCache invoiceViewCache) {
+        this.packagePricingRepository = packagePricingRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.invoiceViewCache = invoiceViewCache;
+    }
+
+    private record PriceKey(String packageName, String country, String visaType) {
+    }
+
+    /**
+     * @param prices     Key: normalised (package, country, visa type), Value: price
+     * @param overridden normalised package names that have country/visa-type rows
+     */
+    private record Snapshot(Map<PriceKey, BigDecimal> prices, Set<String> overridden) {
+        static final Snapshot EMPTY = new Snapshot(Map.of(), Set.of());
+    }
+
+    public record Line(String type, Long id, String name, String packageName, String visaType,
+                       String country, BigDecimal price) {
+    }
+
+    public record Quote(List<Line> lines, BigDecimal subtotal, String discountType, BigDecimal discountValue,
+                        BigDecimal discount, String discountLabel, BigDecimal total) {
+    }
+
+    // --- Loading ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // Built-in prices apply until the next refresh succeeds
+            log.error("Failed to load package_pricing", e);
+        }
+    }
+
+    public void reload() {
+        String current = tableVersion();
+        Map<PriceKey, BigDecimal> prices = new HashMap<>();
+        Set<String> overridden = new HashSet<>();
+        for (PackagePricing row : packagePricingRepository.findAll()) {
+            if (Boolean.FALSE.equals(row.getIsActive()) || row.getPrice() == null) {
+                continue;
+            }
+            PriceKey key = new PriceKey(normalize(row.getPackageName()), normalize(row.getCountry()),
+                    normalize(row.getVisaType()));
+            prices.put(key, row.getPrice());
+            if (!key.country().isEmpty() || !key.visaType().isEmpty()) {
+                overridden.add(key.packageName());
+            }
+        }
+        snapshot = new Snapshot(Map.copyOf(prices), Set.copyOf(overridden));
+        version = current;
+        invoiceViewCache.invalidateAll();
+        log.info("Loaded {} package prices ({} packages with overrides)", prices.size(), overridden.size());
+    }
+
+    @Scheduled(initialDelayString = "${app.pricing.refresh-ms:60000}",
+            fixedDelayString = "${app.pricing.refresh-ms:60000}")
+    public void refreshIfChanged() {
+        try {
+            String current = tableVersion();
+            if (!current.equals(version)) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to check package_pricing for changes: {}", e.getMessage());
+        }
+    }
+
+    private String tableVersion() {
+        return jdbcTemplate.queryForObject(
+                "SELECT CONCAT(COUNT(*), '/', COALESCE(MAX(COALESCE(updated_at, created_at)), '')) FROM package_pricing",
+                String.class);
+    }
+
+    // --- Pricing ---
+
+    public BigDecimal priceFor(String packageName, String country, String visaType) {
+        Snapshot current = snapshot;
+        String pkg = normalize(packageName);
+        if (current.overridden().contains(pkg)) {
+            String ctry = normalize(country);
+            String visa = normalize(visaType);
+            BigDecimal price = current.prices().get(new PriceKey(pkg, ctry, visa));
+            if (price == null) price = current.prices().get(new PriceKey(pkg, ctry, ""));
+            if (price == null) price = current.prices().get(new PriceKey(pkg, "", visa));
+            if (price != null) return price;
+        }
+        BigDecimal price = current.prices().get(new PriceKey(pkg, "", ""));
+        if (price == null) price = BUILT_IN_PRICES.getOrDefault(pkg, DEFAULT_PRICE);
+        return price;
+    }
+
+    /**
+     * Prices a traveler and their dependents and applies the traveler's discount.
+     * Dependents without their own package, visa type or country inherit the traveler's.
+     */
+    public Quote quote(Traveler traveler, List<Dependent> dependents) {
+        List<Line> lines = new ArrayList<>(dependents.size() + 1);
+        String pkg = hasText(traveler.getPackage_()) ? traveler.getPackage_() : DEFAULT_PACKAGE;
+        String visaType = traveler.getVisaType();
+        String country = traveler.getTravelCountry();
+        lines.add(new Line("main", traveler.getId(), fullName(traveler.getFirstName(), traveler.getLastName()),
+                pkg, visaType, country, priceFor(pkg, country, visaType)));
+
+        for (Dependent dep : dependents) {
+            String depPkg = hasText(dep.getPackageType()) ? dep.getPackageType() : pkg;
+            String depVisa = dep.getVisaType() != null ? dep.getVisaType() : visaType;
+            String depCountry = dep.getTravelCountry() != null ? dep.getTravelCountry() : country;
+            lines.add(new Line("co-traveler", dep.getId(), fullName(dep.getFirstName(), dep.getLastName()),
+                    depPkg, depVisa, depCountry, priceFor(depPkg, depCountry, depVisa)));
+        }
+
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (Line line : lines) {
+            subtotal = subtotal.add(line.price());
+        }
+
+        String discountType = traveler.getDiscountType() != null ? traveler.getDiscountType() : "none";
+        BigDecimal discountValue = traveler.getDiscountValue() != null ? traveler.getDiscountValue() : BigDecimal.ZERO;
+        BigDecimal discount = BigDecimal.ZERO;
+        String discountLabel = "";
+        if (discountValue.compareTo(BigDecimal.ZERO) > 0) {
+            if ("percentage".equalsIgnoreCase(discountType)) {
+                discount = subtotal.multiply(discountValue).divide(HUNDRED, 2, RoundingMode.HALF_UP);
+                discountLabel = "Discount (" + discountValue.intValue() + "%)";
+            } else if ("fixed".equalsIgnoreCase(discountType)) {
+                discount = discountValue;
+                discountLabel = "Discount";
+            }
+        }
+        if (discount.compareTo(subtotal) > 0) discount = subtotal;
+
+        return new Quote(List.copyOf(lines), subtotal, discountType, discountValue, discount, discountLabel,
+                subtotal.subtract(discount));
+    }
+
+    // --- Helpers ---
+
+    private static String normalize(String value) {
+        if (value == null) return "";
+        return WHITESPACE.matcher(value.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String fullName(String first, String last) {
+        return ((first != null ? first : "") + " " + (last != null ? last : "")).trim();
+    }
+
+    private static boolean hasText(String s) {
+        return s != null && !s.trim().isEmpty();
+    }
+}
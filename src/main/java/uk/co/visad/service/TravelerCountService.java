@@ -0,0 +1,84 @@
+package uk.co.visad.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.co.visad.repository.TravelerRepository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory traveler total used to fill dashboard pagination without running
+ * a COUNT(*) on every list request.
+ *
+ * The counter is adjusted after commit on create/delete and
+ * periodically reconciled against the database to absorb any drift
+ * (rolled-back transactions, direct SQL edits, other nodes).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TravelerCountService {
+
+    private final TravelerRepository travelerRepository;
+
+    private final AtomicLong total = new AtomicLong(-1);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialise() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${app.traveler-count.reconcile-ms:300000}")
+    public void reconcile() {
+        try {
+            long dbTotal = travelerRepository.count();
+            long previous = total.getAndSet(dbTotal);
+            if (previous >= 0 && previous != dbTotal) {
+                log.debug("Traveler count drift corrected: {} -> {}", previous, dbTotal);
+            }
+        } catch (Exception e) {
+            log.warn("Traveler count reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    public long getTotal() {
+        long value = total.get();
+        if (value < 0) {
+            // Not initialised yet (e.g. request arrived before ApplicationReadyEvent)
+            value = travelerRepository.count();
+            total.compareAndSet(-1, value);
+        }
+        return value;
+    }
+
+    public void onCreated() {
+        afterCommit(() -> adjustTotal(1));
+    }
+
+    public void onDeleted() {
+        afterCommit(() -> adjustTotal(-1));
+    }
+
+    private void adjustTotal(long delta) {
+        total.updateAndGet(v -> v < 0 ? v : Math.max(0, v + delta));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -2,9 +2,9 @@ package uk.co.visad.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -16,17 +16,14 @@ import uk.co.visad.dto.TravelerDto;
 import uk.co.visad.entity.Dependent;
 import uk.co.visad.entity.Traveler;
 import uk.co.visad.entity.TravelerQuestions;
-import uk.co.visad.entity.VisaUrl;
 import uk.co.visad.exception.BadRequestException;
 import uk.co.visad.exception.ResourceNotFoundException;
 import uk.co.visad.repository.DependentRepository;
 import uk.co.visad.repository.TravelerQuestionsRepository;
 import uk.co.visad.repository.TravelerRepository;
-import uk.co.visad.repository.VisaUrlRepository;
 import uk.co.visad.security.UserPrincipal;
 
-import java.lang.reflect.Field;
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -34,9 +31,8 @@ import java.util.*;
 import java.util.stream.Collectors;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import uk.co.visad.util.FileEncryptionUtil;
+import uk.co.visad.util.FieldAccessorRegistry;
 
 @Service
 @RequiredArgsConstructor
@@ -46,20 +42,16 @@ public class TravelerService {
     private final TravelerRepository travelerRepository;
     private final DependentRepository dependentRepository;
     private final TravelerQuestionsRepository travelerQuestionsRepository;
-    private final VisaUrlRepository visaUrlRepository;
+    private final VisaUrlService visaUrlService;
     private final AuditService auditService;
+    private final TravelerCountService travelerCountService;
     private final ObjectMapper objectMapper;
-    private final org.springframework.messaging.simp.SimpMessagingTemplate messagingTemplate;
+    private final CoalescingBroadcaster broadcaster;
+    private final BlobStoreService blobStoreService;
 
     @Value("${app.base-url:}")
     private String appBaseUrl;
 
-    @Value("${app.upload.root:/home/VisaD/visad.co.uk/vault_uploads}")
-    private String uploadRoot;
-
-    @Autowired(required = false)
-    private FileEncryptionUtil encryptionUtil;
-
     private static final Set<String> ALLOWED_FIELDS = Set.of(
             "name", "travelCountry", "visaCenter", "package", "visaType", "status", "whatsappContact",
             "appointmentRemarks", "visaLink", "note", "plannedTravelDate", "firstName", "lastName",
@@ -72,6 +64,9 @@ public class TravelerService {
 
     private static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yy HH:mm");
 
+    // Cursor date of a row without created_at (keyset phase 2)
+    private static final String NULL_CURSOR_DATE = "null";
+
     // Fields that belong to the traveler_questions table
     private static final Set<String> QUESTIONS_FIELDS = Set.of(
             // Occupation
@@ -111,6 +106,15 @@ public class TravelerService {
     private static final Set<String> DATE_FIELDS = Set.of(
             "dob", "passportIssue", "passportExpire", "plannedTravelDate", "docDate");
 
+    // Accessors resolved once at class load; fails fast if an allowed field has no setter
+    private static final FieldAccessorRegistry<Traveler> TRAVELER_ACCESSORS = FieldAccessorRegistry
+            .of(Traveler.class, Map.of("package", "package_"))
+            .requireAll(ALLOWED_FIELDS);
+
+    private static final FieldAccessorRegistry<TravelerQuestions> QUESTIONS_ACCESSORS = FieldAccessorRegistry
+            .of(TravelerQuestions.class)
+            .requireAll(QUESTIONS_FIELDS);
+
     @Transactional
     public Long createTraveler() {
         System.out.println(">>> CHECKPOINT: createTraveler() called <<<");
@@ -127,6 +131,7 @@ public class TravelerService {
                 .build();
 
         traveler = travelerRepository.save(traveler);
+        travelerCountService.onCreated();
 
         auditService.logChange("traveler", traveler.getId(), traveler.getName(),
                 "Created Traveler", "", "New Record");
@@ -140,31 +145,93 @@ public class TravelerService {
         Sort sort = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
         Pageable pageable = PageRequest.of(page - 1, limit, sort);
 
+        // Totals come from the in-memory counter, so the page queries are Slices (no COUNT)
+        long totalRecords = travelerCountService.getTotal();
+        int totalPages = (int) ((totalRecords + limit - 1) / limit);
+
+        List<TravelerDto> dtos;
         if (summary) {
             // Fast path: use projection
-            Page<uk.co.visad.repository.TravelerSummaryProjection> summaryPage = travelerRepository
-                    .findAllProjectedBy(pageable);
+            Slice<uk.co.visad.repository.TravelerSummaryProjection> summarySlice = travelerRepository
+                    .findProjectedSliceBy(pageable);
 
-            List<TravelerDto> dtos = summaryPage.getContent().stream()
+            dtos = summarySlice.getContent().stream()
                     .map(this::mapProjectionToDto)
                     .collect(Collectors.toList());
+        } else {
+            // Full fetch: Two-Query Pattern (Critical Optimization)
+            // 1. Fetch paginated Travelers ONLY (No Joins)
+            Slice<Traveler> travelerSlice = travelerRepository.findSliceBy(pageable);
 
-            ApiResponse.PaginationInfo pagination = ApiResponse.PaginationInfo.builder()
-                    .page(page)
-                    .limit(limit)
-                    .totalRecords(summaryPage.getTotalElements())
-                    .totalPages(summaryPage.getTotalPages())
-                    .hasMore(page < summaryPage.getTotalPages())
-                    .build();
+            dtos = mapTravelersWithRelations(travelerSlice.getContent());
+        }
+
+        ApiResponse.PaginationInfo pagination = ApiResponse.PaginationInfo.builder()
+                .page(page)
+                .limit(limit)
+                .totalRecords(totalRecords)
+                .totalPages(totalPages)
+                .hasMore(page < totalPages)
+                .build();
+
+        return ApiResponse.success(dtos, pagination);
+    }
+
+    /**
+     * Keyset (seek) pagination over createdAt DESC, id DESC, NULL createdAt last.
+     * Returns a Slice (no COUNT query) and an opaque cursor for the next slice,
+     * so deep pages cost the same as the first one.
+     *
+     * Rows are read in two phases so each query keeps a plain index-friendly
+     * order: first every row with a createdAt, then the rows without one by
+     * id DESC. A slice that runs out of dated rows is topped up from the
+     * undated ones.
+     */
+    @Transactional(readOnly = true)
+    public ApiResponse<List<TravelerDto>> getTravelersAfterCursor(String cursor, int limit, boolean summary) {
+        TravelerCursor after = decodeCursor(cursor);
+
+        List<TravelerDto> dtos;
+        boolean hasNext;
+
+        if (summary) {
+            Seek<uk.co.visad.repository.TravelerSummaryProjection> seek = seek(after, limit,
+                    travelerRepository::findProjectedDatedSliceBy,
+                    travelerRepository::findProjectedSliceAfter,
+                    travelerRepository::findProjectedUndatedSliceAfter);
+            dtos = seek.rows().stream()
+                    .map(this::mapProjectionToDto)
+                    .collect(Collectors.toList());
+            hasNext = seek.hasNext();
+        } else {
+            Seek<Traveler> seek = seek(after, limit,
+                    travelerRepository::findDatedSliceBy,
+                    travelerRepository::findSliceAfter,
+                    travelerRepository::findUndatedSliceAfter);
+            dtos = mapTravelersWithRelations(seek.rows());
+            hasNext = seek.hasNext();
+        }
 
-            return ApiResponse.success(dtos, pagination);
+        String nextCursor = null;
+        if (hasNext && !dtos.isEmpty()) {
+            TravelerDto last = dtos.get(dtos.size() - 1);
+            nextCursor = encodeCursor(last.getCreatedAt(), last.getId());
         }
 
-        // Full fetch: Two-Query Pattern (Critical Optimization)
-        // 1. Fetch paginated Travelers ONLY (No Joins)
-        Page<Traveler> travelerPage = travelerRepository.findAll(pageable);
+        long totalRecords = travelerCountService.getTotal();
 
-        List<Traveler> travelers = travelerPage.getContent();
+        ApiResponse.PaginationInfo pagination = ApiResponse.PaginationInfo.builder()
+                .limit(limit)
+                .totalRecords(totalRecords)
+                .totalPages((int) ((totalRecords + limit - 1) / limit))
+                .hasMore(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+
+        return ApiResponse.success(dtos, pagination);
+    }
+
+    private List<TravelerDto> mapTravelersWithRelations(List<Traveler> travelers) {
         List<Long> travelerIds = travelers.stream()
                 .map(Traveler::getId)
                 .collect(Collectors.toList());
@@ -213,28 +280,79 @@ public class TravelerService {
             }
         }
 
-        final Map<Long, List<Dependent>> finalDependentsMap = dependentsMap;
-        final Map<Long, TravelerQuestions> finalDependentQuestionsMap = dependentQuestionsMap;
-
         // 4. In-Memory Stitching
-        List<TravelerDto> dtos = travelers.stream()
+        return travelers.stream()
                 .map(t -> {
-
-                    List<Dependent> myDependents = finalDependentsMap.getOrDefault(t.getId(),
+                    List<Dependent> myDependents = dependentsMap.getOrDefault(t.getId(),
                             new java.util.ArrayList<>());
-                    return mapToDtoOptimized(t, myDependents, questionsMap.get(t.getId()), finalDependentQuestionsMap);
+                    return mapToDtoOptimized(t, myDependents, questionsMap.get(t.getId()), dependentQuestionsMap);
                 })
                 .collect(Collectors.toList());
+    }
 
-        ApiResponse.PaginationInfo pagination = ApiResponse.PaginationInfo.builder()
-                .page(page)
-                .limit(limit)
-                .totalRecords(travelerPage.getTotalElements())
-                .totalPages(travelerPage.getTotalPages())
-                .hasMore(page < travelerPage.getTotalPages())
-                .build();
+    /**
+     * @param createdAt null for a row without created_at (phase 2 of the seek)
+     */
+    private record TravelerCursor(LocalDateTime createdAt, Long id) {
+    }
 
-        return ApiResponse.success(dtos, pagination);
+    private record Seek<T>(List<T> rows, boolean hasNext) {
+    }
+
+    @FunctionalInterface
+    private interface DatedAfter<T> {
+        Slice<T> find(LocalDateTime createdAt, Long id, Pageable pageable);
+    }
+
+    private <T> Seek<T> seek(TravelerCursor after, int limit,
+                             java.util.function.Function<Pageable, Slice<T>> datedFirst,
+                             DatedAfter<T> datedAfter,
+                             java.util.function.BiFunction<Long, Pageable, Slice<T>> undatedAfter) {
+        List<T> rows = new ArrayList<>(limit);
+        long undatedAfterId = Long.MAX_VALUE;
+
+        if (after == null || after.createdAt() != null) {
+            Pageable dated = PageRequest.of(0, limit, Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")));
+            Slice<T> slice = after == null
+                    ? datedFirst.apply(dated)
+                    : datedAfter.find(after.createdAt(), after.id(), dated);
+            rows.addAll(slice.getContent());
+            if (slice.hasNext()) {
+                return new Seek<>(rows, true);
+            }
+            if (rows.size() == limit) {
+                // Dated rows end exactly here: the next slice starts on the undated ones, if any
+                return new Seek<>(rows, travelerRepository.existsByCreatedAtIsNull());
+            }
+        } else {
+            undatedAfterId = after.id();
+        }
+
+        Slice<T> undated = undatedAfter.apply(undatedAfterId,
+                PageRequest.of(0, limit - rows.size(), Sort.by(Sort.Order.desc("id"))));
+        rows.addAll(undated.getContent());
+        return new Seek<>(rows, undated.hasNext());
+    }
+
+    private String encodeCursor(LocalDateTime createdAt, Long id) {
+        // "null" marks a row without created_at, so paging continues into phase 2
+        String raw = (createdAt != null ? createdAt.toString() : NULL_CURSOR_DATE) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private TravelerCursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            String date = raw.substring(0, sep);
+            return new TravelerCursor(NULL_CURSOR_DATE.equals(date) ? null : LocalDateTime.parse(date),
+                    Long.parseLong(raw.substring(sep + 1)));
+        } catch (Exception e) {
+            throw new BadRequestException("Invalid cursor");
+        }
     }
 
     private TravelerDto mapProjectionToDto(uk.co.visad.repository.TravelerSummaryProjection p) {
@@ -343,6 +461,11 @@ public class TravelerService {
         broadcastDataUpdate(id, field, value);
     }
 
+    /**
+     * Bulk update: the traveler and its questions row are loaded once, every change
+     * is applied in memory, and each table is flushed with a single UPDATE at commit.
+     * Audit rows for the whole request are written as one batch.
+     */
     @Transactional
     public void updateFields(Long id, Map<String, Object> updates) {
         if (updates == null || updates.isEmpty()) {
@@ -352,6 +475,10 @@ public class TravelerService {
         Traveler traveler = travelerRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Traveler not found"));
 
+        TravelerQuestions questions = null;
+        List<AuditService.FieldChange> changes = new ArrayList<>();
+        Map<String, String> broadcasts = new LinkedHashMap<>();
+
         boolean visaLinkNeedsUpdate = false;
         boolean addressNeedsSync = false;
         boolean travelDateChanged = false;
@@ -365,8 +492,10 @@ public class TravelerService {
 
             // Check if field belongs to questions table
             if (QUESTIONS_FIELDS.contains(javaField)) {
-                // Update in questions table
-                updateQuestionField(id, field, value);
+                if (questions == null) {
+                    questions = findOrCreateQuestions(id);
+                }
+                setQuestionField(questions, javaField, value);
                 continue;
             }
 
@@ -378,7 +507,10 @@ public class TravelerService {
 
             // Handle special fields
             if ("plannedTravelDate".equals(javaField)) {
-                updateTravelerQuestionsDate(id, "traveler", value);
+                if (questions == null) {
+                    questions = findOrCreateQuestions(id);
+                }
+                questions.setTravelDateFrom(parseDate(value));
                 travelDateChanged = true;
             } else {
                 setFieldValue(traveler, javaField, value);
@@ -398,34 +530,44 @@ public class TravelerService {
 
             // Log change
             if (!Objects.equals(oldValue, value)) {
-                auditService.logChange("traveler", id, traveler.getName(), field, oldValue, value);
+                changes.add(new AuditService.FieldChange(field, oldValue, value));
             }
-            
-            // Broadcast the real-time update
-            broadcastDataUpdate(id, field, value);
+
+            broadcasts.put(field, value);
         }
 
-        // Update metadata
+        // Update metadata and derived columns in memory before the single save
+        if (visaLinkNeedsUpdate) {
+            applyVisaLink(traveler);
+        }
         traveler.setLastUpdatedByUsername(getCurrentUsername());
         traveler.setLastUpdatedAt(LocalDateTime.now());
         travelerRepository.save(traveler);
 
-        // Perform post-update actions
-        if (visaLinkNeedsUpdate) {
-            updateVisaLink(traveler);
-        }
-
-        if (addressNeedsSync) {
-            syncFamilyAddress(traveler);
+        if (questions != null) {
+            travelerQuestionsRepository.save(questions);
         }
 
-        if (travelDateChanged) {
+        // Dependents are loaded at most once for both address sync and travel date propagation
+        if (addressNeedsSync || travelDateChanged) {
             List<Dependent> deps = dependentRepository.findByTraveler_Id(id);
             if (!deps.isEmpty()) {
-                deps.forEach(d -> d.setPlannedTravelDate(traveler.getPlannedTravelDate()));
+                for (Dependent d : deps) {
+                    if (addressNeedsSync) {
+                        copyFamilyAddress(traveler, d);
+                    }
+                    if (travelDateChanged) {
+                        d.setPlannedTravelDate(traveler.getPlannedTravelDate());
+                    }
+                }
                 dependentRepository.saveAll(deps);
             }
         }
+
+        auditService.logChanges("traveler", id, traveler.getName(), changes);
+
+        // Broadcast the real-time updates
+        broadcasts.forEach((field, value) -> broadcastDataUpdate(id, field, value));
     }
 
     @Transactional
@@ -440,6 +582,7 @@ public class TravelerService {
 
         // Delete traveler
         travelerRepository.delete(traveler);
+        travelerCountService.onDeleted();
 
         auditService.logChange("traveler", id, name, "Deleted Traveler", "Exists", "Deleted");
     }
@@ -548,102 +691,13 @@ public class TravelerService {
                 .build();
     }
 
-    /**
-     * Save invoices for all travelers that don't have saved invoices yet
-     * PHP equivalent: travelers.php?action=save_all_invoices
-     */
-    @Transactional
-    public Map<String, Object> saveAllInvoices() {
-        // Find all travelers without saved invoices
-        List<Traveler> travelersWithoutInvoices = travelerRepository.findAll().stream()
-                .filter(t -> !Boolean.TRUE.equals(t.getInvoiceGenerated()))
-                .collect(Collectors.toList());
-
-        int savedCount = 0;
-        LocalDateTime now = LocalDateTime.now();
-
-        for (Traveler traveler : travelersWithoutInvoices) {
-            try {
-                // Get dependents for this traveler
-                List<Dependent> dependents = dependentRepository.findByTraveler_Id(traveler.getId());
-
-                // Calculate invoice data
-                BigDecimal subtotal = BigDecimal.ZERO;
-                List<Map<String, Object>> items = new ArrayList<>();
-
-                // Add main traveler
-                BigDecimal mainPrice = traveler.getPrice() != null ? traveler.getPrice() : BigDecimal.ZERO;
-                subtotal = subtotal.add(mainPrice);
-                items.add(Map.of(
-                        "type", "main",
-                        "id", traveler.getId(),
-                        "name", (traveler.getFirstName() != null ? traveler.getFirstName() : "") + " " +
-                                (traveler.getLastName() != null ? traveler.getLastName() : ""),
-                        "service", traveler.getPackage_() != null ? traveler.getPackage_() : "Full Support",
-                        "price", mainPrice));
-
-                // Add dependents
-                for (Dependent dep : dependents) {
-                    BigDecimal depPrice = dep.getPrice() != null ? dep.getPrice() : BigDecimal.ZERO;
-                    subtotal = subtotal.add(depPrice);
-                    items.add(Map.of(
-                            "type", "co-traveler",
-                            "id", dep.getId(),
-                            "name", (dep.getFirstName() != null ? dep.getFirstName() : "") + " " +
-                                    (dep.getLastName() != null ? dep.getLastName() : ""),
-                            "service", dep.getPackageType() != null ? dep.getPackageType() : "Full Support",
-                            "price", depPrice));
-                }
-
-                // Calculate discount
-                BigDecimal discountAmount = BigDecimal.ZERO;
-                String discountType = traveler.getDiscountType() != null ? traveler.getDiscountType() : "none";
-                BigDecimal discountValue = traveler.getDiscountValue() != null ? traveler.getDiscountValue()
-                        : BigDecimal.ZERO;
-
-                if ("percentage".equals(discountType) && discountValue.compareTo(BigDecimal.ZERO) > 0) {
-                    discountAmount = subtotal.multiply(discountValue).divide(BigDecimal.valueOf(100), 2,
-                            BigDecimal.ROUND_HALF_UP);
-                } else if ("fixed".equals(discountType)) {
-                    discountAmount = discountValue;
-                }
-
-                BigDecimal total = subtotal.subtract(discountAmount);
-
-                // Convert items to JSON
-                String itemsJson;
-                try {
-                    itemsJson = objectMapper.writeValueAsString(items);
-                } catch (Exception e) {
-                    log.error("Failed to serialize invoice items for traveler {}", traveler.getId(), e);
-                    continue;
-                }
-
-                // Save invoice data
-                traveler.setInvoiceSubtotal(subtotal);
-                traveler.setInvoiceDiscountType(discountType);
-                traveler.setInvoiceDiscountValue(discountValue);
-                traveler.setInvoiceDiscountAmount(discountAmount);
-                traveler.setInvoiceTotal(total);
-                traveler.setInvoiceItemsJson(itemsJson);
-                traveler.setInvoiceGenerated(true);
-                traveler.setInvoiceGeneratedAt(now);
-
-                travelerRepository.save(traveler);
-                savedCount++;
-
-            } catch (Exception e) {
-                log.error("Failed to save invoice for traveler {}", traveler.getId(), e);
-            }
-        }
-
-        return Map.of(
-                "saved_count", savedCount,
-                "message", "Saved " + savedCount + " invoices successfully");
-    }
-
     // Helper methods
     private void updateVisaLink(Traveler traveler) {
+        applyVisaLink(traveler);
+        travelerRepository.save(traveler);
+    }
+
+    private void applyVisaLink(Traveler traveler) {
         String country = traveler.getTravelCountry();
         String center = traveler.getVisaCenter();
 
@@ -654,45 +708,40 @@ public class TravelerService {
             center = center.split(" - ")[0];
         }
 
-        String url = "";
-        String appFormUrl = "";
-
-        // Try specific match first
-        if (country != null && center != null && !center.isEmpty()) {
-            Optional<VisaUrl> specific = visaUrlRepository.findByCountryAndVisaCenter(country, center);
-            if (specific.isPresent()) {
-                url = specific.get().getUrl();
-                appFormUrl = specific.get().getApplicationFormUrl();
-            }
-        }
-
-        // Try general match
-        if (url.isEmpty() && country != null) {
-            Optional<VisaUrl> general = visaUrlRepository.findByCountryWithNoVisaCenter(country);
-            if (general.isPresent()) {
-                url = general.get().getUrl();
-                appFormUrl = general.get().getApplicationFormUrl();
-            }
-        }
-
-        traveler.setVisaLink(url);
-        traveler.setApplicationFormLink(appFormUrl);
-        travelerRepository.save(traveler);
+        // Specific match first, then the country's general link (preloaded table, no query)
+        VisaUrlService.VisaLink link = visaUrlService.findLink(country, center);
+        traveler.setVisaLink(link.url());
+        traveler.setApplicationFormLink(link.applicationFormUrl());
     }
 
     private void syncFamilyAddress(Traveler traveler) {
         List<Dependent> dependents = dependentRepository.findByTraveler_Id(traveler.getId());
         for (Dependent dep : dependents) {
-            dep.setAddressLine1(traveler.getAddressLine1());
-            dep.setAddressLine2(traveler.getAddressLine2());
-            dep.setCity(traveler.getCity());
-            dep.setStateProvince(traveler.getStateProvince());
-            dep.setZipCode(traveler.getZipCode());
-            dep.setCountry(traveler.getCountry());
+            copyFamilyAddress(traveler, dep);
         }
         dependentRepository.saveAll(dependents);
     }
 
+    private void copyFamilyAddress(Traveler traveler, Dependent dep) {
+        dep.setAddressLine1(traveler.getAddressLine1());
+        dep.setAddressLine2(traveler.getAddressLine2());
+        dep.setCity(traveler.getCity());
+        dep.setStateProvince(traveler.getStateProvince());
+        dep.setZipCode(traveler.getZipCode());
+        dep.setCountry(traveler.getCountry());
+    }
+
+    private TravelerQuestions findOrCreateQuestions(Long travelerId) {
+        return travelerQuestionsRepository
+                .findByRecordIdAndRecordType(travelerId, "traveler")
+                .orElseGet(() -> {
+                    TravelerQuestions newTq = new TravelerQuestions();
+                    newTq.setRecordId(travelerId);
+                    newTq.setRecordType("traveler");
+                    return newTq;
+                });
+    }
+
     private void updateTravelerQuestionsDate(Long recordId, String recordType, String value) {
         TravelerQuestions tq = travelerQuestionsRepository
                 .findByRecordIdAndRecordType(recordId, recordType)
@@ -718,7 +767,8 @@ public class TravelerService {
             update.put("value", value);
             update.put("updatedBy", getCurrentUsername());
             
-            messagingTemplate.convertAndSend("/topic/presence", update);
+            // Coalesced per traveler+field so rapid edits fan out as one frame
+            broadcaster.send("/topic/presence", "DATA_UPDATE:TRAVELER:" + travelerId + ":" + field, update);
         } catch (Exception e) {
             log.error("Failed to broadcast data update for traveler {}", travelerId, e);
         }
@@ -1095,57 +1145,20 @@ public class TravelerService {
     }
 
     private String getFieldValue(Traveler traveler, String fieldName) {
-        try {
-            Field field = Traveler.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            Object value = field.get(traveler);
-            return value != null ? value.toString() : "";
-        } catch (Exception e) {
-            return "";
-        }
+        String value = TRAVELER_ACCESSORS.getAsString(traveler, fieldName);
+        return value != null ? value : "";
     }
 
     private void setFieldValue(Traveler traveler, String fieldName, String value) {
         try {
-            Field field = Traveler.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            Class<?> type = field.getType();
-
-            if (type == String.class) {
-                field.set(traveler, value);
-            } else if (type == LocalDate.class) {
-                field.set(traveler, parseDate(value));
-            } else if (type == Boolean.class || type == boolean.class) {
-                field.set(traveler, Boolean.parseBoolean(value) || "1".equals(value));
-            } else if (type == BigDecimal.class) {
-                field.set(traveler, value != null && !value.isEmpty() ? new BigDecimal(value) : null);
-            } else if (type == Integer.class || type == int.class) {
-                field.set(traveler, value != null && !value.isEmpty() ? Integer.parseInt(value) : null);
-            }
-        } catch (NoSuchFieldException e) {
-            // Handle package field specially
-            if ("package".equals(fieldName)) {
-                traveler.setPackage_(value);
-            }
-        } catch (Exception e) {
+            TRAVELER_ACCESSORS.set(traveler, fieldName, value);
+        } catch (IllegalArgumentException e) {
             log.error("Error setting field {} to value {}: {}", fieldName, value, e.getMessage());
         }
     }
 
     private LocalDate parseDate(String value) {
-        if (value == null || value.isEmpty()) {
-            return null;
-        }
-        try {
-            // Try different date formats
-            if (value.contains("/")) {
-                return LocalDate.parse(value, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            } else {
-                return LocalDate.parse(value);
-            }
-        } catch (Exception e) {
-            return null;
-        }
+        return FieldAccessorRegistry.parseDate(value);
     }
 
     @Transactional
@@ -1161,7 +1174,7 @@ public class TravelerService {
                     return newTq;
                 });
 
-        setObjectField(tq, javaField, value);
+        setQuestionField(tq, javaField, value);
         travelerQuestionsRepository.save(tq);
 
         // Simple audit
@@ -1185,7 +1198,7 @@ public class TravelerService {
                     return newTq;
                 });
 
-        // Save file to uploadRoot/locker/YYYY/MM/
+        // Keyed locker/YYYY/MM/name; content goes to the deduplicating blob store
         LocalDateTime now = LocalDateTime.now();
         String year = String.valueOf(now.getYear());
         String month = String.format("%02d", now.getMonthValue());
@@ -1196,23 +1209,9 @@ public class TravelerService {
                 : "";
         String filename = java.util.UUID.randomUUID().toString() + extension;
 
-        java.nio.file.Path uploadDir = java.nio.file.Paths.get(uploadRoot, "locker", year, month);
-        if (!java.nio.file.Files.exists(uploadDir)) {
-            java.nio.file.Files.createDirectories(uploadDir);
-        }
-        if (encryptionUtil != null) {
-            try {
-                byte[] encrypted = encryptionUtil.encrypt(file.getInputStream().readAllBytes());
-                java.nio.file.Files.write(uploadDir.resolve(filename), encrypted);
-            } catch (java.security.GeneralSecurityException e) {
-                throw new java.io.IOException("Failed to encrypt file", e);
-            }
-        } else {
-            java.nio.file.Files.copy(file.getInputStream(), uploadDir.resolve(filename));
-        }
-
         // Stored key relative to uploadRoot/locker/ — matches FileUploadService format
         String relativePath = year + "/" + month + "/" + filename;
+        blobStoreService.store("locker/" + relativePath, file);
 
         // Get existing files array
         String currentValue = getQuestionFieldValue(tq, javaField);
@@ -1236,7 +1235,7 @@ public class TravelerService {
 
         // Save back as JSON
         String jsonValue = objectMapper.writeValueAsString(files);
-        setObjectField(tq, javaField, jsonValue);
+        setQuestionField(tq, javaField, jsonValue);
         travelerQuestionsRepository.save(tq);
 
         log.info("Uploaded file {} to field {} for traveler {}", filename, javaField, id);
@@ -1261,15 +1260,7 @@ public class TravelerService {
     }
 
     private String getQuestionFieldValue(TravelerQuestions tq, String fieldName) {
-        try {
-            Field field = TravelerQuestions.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            Object value = field.get(tq);
-            return value != null ? value.toString() : null;
-        } catch (Exception e) {
-            log.error("Error getting field {} from TravelerQuestions: {}", fieldName, e.getMessage());
-            return null;
-        }
+        return QUESTIONS_ACCESSORS.getAsString(tq, fieldName);
     }
 
     @Transactional
@@ -1277,27 +1268,14 @@ public class TravelerService {
         updateQuestionField(id, field, "");
     }
 
-    private void setObjectField(Object target, String fieldName, String value) {
+    private void setQuestionField(TravelerQuestions tq, String fieldName, String value) {
         try {
-            Field field = target.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            Class<?> type = field.getType();
-
-            if (type == String.class) {
-                field.set(target, value);
-            } else if (type == LocalDate.class) {
-                field.set(target, parseDate(value));
-            } else if (type == Boolean.class || type == boolean.class) {
-                field.set(target, Boolean.parseBoolean(value) || "1".equals(value));
-            } else if (type == BigDecimal.class) {
-                field.set(target, value != null && !value.isEmpty() ? new BigDecimal(value) : null);
-            } else if (type == Integer.class || type == int.class) {
-                field.set(target, value != null && !value.isEmpty() ? Integer.parseInt(value) : null);
+            if (!QUESTIONS_ACCESSORS.set(tq, fieldName, value)) {
+                log.error("Error setting field {} on TravelerQuestions: unknown field", fieldName);
             }
-        } catch (Exception e) {
-            log.error("Error setting field {} on {} to value {}: {}", fieldName, target.getClass().getSimpleName(),
-                    value, e.getMessage());
-            // throw new BadRequestException("Invalid field: " + fieldName);
+        } catch (IllegalArgumentException e) {
+            log.error("Error setting field {} on TravelerQuestions to value {}: {}", fieldName, value,
+                    e.getMessage());
         }
     }
 }
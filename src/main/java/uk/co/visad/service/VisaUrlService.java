@@ -3,9 +3,15 @@ package uk.co.visad.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import uk.co.visad.config.CacheConfig;
 import uk.co.visad.dto.VisaUrlDto;
 import uk.co.visad.entity.VisaUrl;
 import uk.co.visad.exception.BadRequestException;
@@ -16,7 +22,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -27,14 +36,39 @@ import java.util.stream.Collectors;
 public class VisaUrlService {
 
     private final VisaUrlRepository visaUrlRepository;
+    private final CacheManager cacheManager;
 
     @Value("${app.upload.forms-dir:/home/VisaD/visad.co.uk/vault_uploads/forms}")
     private String formsDir;
 
     private static final Set<String> ALLOWED_EXTENSIONS = Set.of("pdf", "doc", "docx");
 
+    private static final VisaLink NO_LINK = new VisaLink("", "");
+
+    /**
+     * Visa and application form links for a destination.
+     */
+    public record VisaLink(String url, String applicationFormUrl) {
+    }
+
+    // Lookup key, normalised the way the database compares (case-insensitive, trailing spaces ignored)
+    private record LinkKey(String country, String visaCenter) {
+        static LinkKey of(String country, String visaCenter) {
+            return new LinkKey(normalise(country), normalise(visaCenter));
+        }
+
+        private static String normalise(String value) {
+            return value == null ? "" : value.stripTrailing().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        log.info("Visa URL lookup preloaded: {} entries", linkTable().size());
+    }
+
     @Transactional(readOnly = true)
-    @org.springframework.cache.annotation.Cacheable("visa_urls")
+    @Cacheable(CacheConfig.VISA_URLS)
     public List<VisaUrlDto> getAllUrls() {
         return visaUrlRepository.findAllByOrderByCountryAscVisaCenterAsc()
                 .stream()
@@ -43,7 +77,7 @@ public class VisaUrlService {
     }
 
     @Transactional
-    @org.springframework.cache.annotation.CacheEvict(value = "visa_urls", allEntries = true)
+    @CacheEvict(value = { CacheConfig.VISA_URLS, CacheConfig.VISA_URL_LOOKUP }, allEntries = true)
     public void createUrl(VisaUrlDto.CreateRequest request, MultipartFile file) throws IOException {
         if (request.getCountry() == null || request.getCountry().isEmpty()) {
             throw new BadRequestException("Country is required");
@@ -73,7 +107,7 @@ public class VisaUrlService {
     }
 
     @Transactional
-    @org.springframework.cache.annotation.CacheEvict(value = "visa_urls", allEntries = true)
+    @CacheEvict(value = { CacheConfig.VISA_URLS, CacheConfig.VISA_URL_LOOKUP }, allEntries = true)
     public void updateUrl(VisaUrlDto.UpdateRequest request, MultipartFile file) throws IOException {
         VisaUrl visaUrl = visaUrlRepository.findById(request.getId())
                 .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
@@ -122,7 +156,7 @@ public class VisaUrlService {
     }
 
     @Transactional
-    @org.springframework.cache.annotation.CacheEvict(value = "visa_urls", allEntries = true)
+    @CacheEvict(value = { CacheConfig.VISA_URLS, CacheConfig.VISA_URL_LOOKUP }, allEntries = true)
     public void deleteUrl(Long id) {
         VisaUrl visaUrl = visaUrlRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("URL not found"));
@@ -135,6 +169,37 @@ public class VisaUrlService {
         visaUrlRepository.delete(visaUrl);
     }
 
+    /**
+     * Links for a country and visa center: the center-specific entry if there is
+     * one, else the country's general entry (no center), else empty links.
+     * Served from a preloaded in-memory table, rebuilt after any URL is changed.
+     */
+    public VisaLink findLink(String country, String visaCenter) {
+        if (country == null) {
+            return NO_LINK;
+        }
+        Map<LinkKey, VisaLink> table = linkTable();
+        VisaLink link = null;
+        if (visaCenter != null && !visaCenter.isEmpty()) {
+            link = table.get(LinkKey.of(country, visaCenter));
+        }
+        if (link == null || link.url().isEmpty()) {
+            link = table.get(LinkKey.of(country, ""));
+        }
+        return link != null ? link : NO_LINK;
+    }
+
+    private Map<LinkKey, VisaLink> linkTable() {
+        return cacheManager.getCache(CacheConfig.VISA_URL_LOOKUP).get("all", () -> {
+            Map<LinkKey, VisaLink> table = new HashMap<>();
+            for (VisaUrl visaUrl : visaUrlRepository.findAll()) {
+                table.putIfAbsent(LinkKey.of(visaUrl.getCountry(), visaUrl.getVisaCenter()),
+                        new VisaLink(visaUrl.getUrl(), visaUrl.getApplicationFormUrl()));
+            }
+            return Map.copyOf(table);
+        });
+    }
+
     private String handleFileUpload(MultipartFile file) throws IOException {
         String extension = getFileExtension(file.getOriginalFilename());
         if (!ALLOWED_EXTENSIONS.contains(extension.toLowerCase())) {
@@ -0,0 +1,68 @@
+package uk.co.visad.util;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+/**
+ * Resource over a chunked-encrypted file that decrypts as it streams.
+ *
+ * contentLength() reports the plaintext size and the stream seeks on skip(),
+ * so Spring MVC can answer Range requests (206 Partial Content) without
+ * decrypting the bytes before the requested range.
+ */
+public class EncryptedFileResource extends AbstractResource {
+
+    private final Path file;
+    private final String filename;
+    private final FileEncryptionUtil encryptionUtil;
+
+    public EncryptedFileResource(Path file, String filename, FileEncryptionUtil encryptionUtil) {
+        this.file = file;
+        this.filename = filename;
+        this.encryptionUtil = encryptionUtil;
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    @Override
+    public boolean isReadable() {
+        return Files.isReadable(file);
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return encryptionUtil.plaintextLength(file);
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        try {
+            return encryptionUtil.openDecryptingStream(file);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt file: " + filename, e);
+        }
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Encrypted file [" + file + "]";
+    }
+}
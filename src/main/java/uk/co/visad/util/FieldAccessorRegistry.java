@@ -0,0 +1,188 @@
+package uk.co.visad.util;
+
+import org.springframework.beans.BeanUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Name-based getters/setters for entity fields edited by name (grid inline
+ * edits, bulk PATCHes, locker forms).
+ *
+ * Accessors are resolved once per entity class and bound to the Lombok
+ * getters/setters through LambdaMetafactory, so a field update is a map
+ * lookup plus a direct method call — no getDeclaredField/setAccessible
+ * per request. Each settable field also gets a typed parser
+ * (String, LocalDate, Boolean, BigDecimal, Integer) chosen from its type.
+ */
+public final class FieldAccessorRegistry<T> {
+
+    private static final DateTimeFormatter UK_DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private final Class<T> type;
+    private final Map<String, Accessor<T>> accessors;
+
+    private record Accessor<T>(Function<T, Object> getter, BiConsumer<T, Object> setter,
+            Function<String, Object> parser) {
+    }
+
+    private FieldAccessorRegistry(Class<T> type, Map<String, Accessor<T>> accessors) {
+        this.type = type;
+        this.accessors = accessors;
+    }
+
+    public static <T> FieldAccessorRegistry<T> of(Class<T> type) {
+        return of(type, Map.of());
+    }
+
+    /**
+     * @param aliases request field name → entity property name (e.g. "package" → "package_")
+     */
+    public static <T> FieldAccessorRegistry<T> of(Class<T> type, Map<String, String> aliases) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Map<String, Accessor<T>> accessors = new HashMap<>();
+
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            PropertyDescriptor pd = BeanUtils.getPropertyDescriptor(type, field.getName());
+            if (pd == null || pd.getReadMethod() == null) {
+                continue;
+            }
+            Function<String, Object> parser = parserFor(field.getType());
+            BiConsumer<T, Object> setter = parser != null && pd.getWriteMethod() != null
+                    ? bindSetter(lookup, pd.getWriteMethod())
+                    : null;
+            accessors.put(field.getName(), new Accessor<>(bindGetter(lookup, pd.getReadMethod()), setter, parser));
+        }
+
+        aliases.forEach((alias, property) -> {
+            Accessor<T> accessor = accessors.get(property);
+            if (accessor == null) {
+                throw new IllegalStateException(type.getSimpleName() + " has no property " + property);
+            }
+            accessors.put(alias, accessor);
+        });
+
+        return new FieldAccessorRegistry<>(type, Map.copyOf(accessors));
+    }
+
+    /**
+     * Fails fast at startup if any of the given field names cannot be written.
+     */
+    public FieldAccessorRegistry<T> requireAll(Collection<String> names) {
+        for (String name : names) {
+            if (!isWritable(name)) {
+                throw new IllegalStateException("No writable accessor for " + type.getSimpleName() + "." + name);
+            }
+        }
+        return this;
+    }
+
+    public boolean isWritable(String name) {
+        Accessor<T> accessor = accessors.get(name);
+        return accessor != null && accessor.setter() != null;
+    }
+
+    /**
+     * Returns the field value as a string, or null if the field is unknown or null.
+     */
+    public String getAsString(T target, String name) {
+        Accessor<T> accessor = accessors.get(name);
+        if (accessor == null) {
+            return null;
+        }
+        Object value = accessor.getter().apply(target);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Parses the raw request value for the field's type and writes it.
+     *
+     * @return false if the field is unknown or has no supported setter
+     * @throws IllegalArgumentException if the value cannot be parsed (e.g. non-numeric price)
+     */
+    public boolean set(T target, String name, String rawValue) {
+        Accessor<T> accessor = accessors.get(name);
+        if (accessor == null || accessor.setter() == null) {
+            return false;
+        }
+        accessor.setter().accept(target, accessor.parser().apply(rawValue));
+        return true;
+    }
+
+    public static LocalDate parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            // Try different date formats
+            if (value.contains("/")) {
+                return LocalDate.parse(value, UK_DATE);
+            } else {
+                return LocalDate.parse(value);
+            }
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Function<String, Object> parserFor(Class<?> fieldType) {
+        if (fieldType == String.class) {
+            return value -> value;
+        } else if (fieldType == LocalDate.class) {
+            return FieldAccessorRegistry::parseDate;
+        } else if (fieldType == Boolean.class || fieldType == boolean.class) {
+            return value -> Boolean.parseBoolean(value) || "1".equals(value);
+        } else if (fieldType == BigDecimal.class) {
+            return value -> value != null && !value.isEmpty() ? new BigDecimal(value) : null;
+        } else if (fieldType == Integer.class || fieldType == int.class) {
+            return value -> value != null && !value.isEmpty() ? Integer.parseInt(value) : null;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Function<T, Object> bindGetter(MethodHandles.Lookup lookup, Method method) {
+        try {
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle, handle.type().wrap());
+            return (Function<T, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot bind getter " + method, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BiConsumer<T, Object> bindSetter(MethodHandles.Lookup lookup, Method method) {
+        try {
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    handle, handle.type().wrap().changeReturnType(void.class));
+            return (BiConsumer<T, Object>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot bind setter " + method, e);
+        }
+    }
+}
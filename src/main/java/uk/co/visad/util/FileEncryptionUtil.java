@@ -1,8 +1,20 @@
 package uk.co.visad.util;
 
+import org.springframework.core.io.Resource;
+
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Arrays;
@@ -10,18 +22,35 @@ import java.util.Arrays;
 /**
  * AES-256-GCM file encryption utility.
  *
- * On-disk format:
+ * Legacy on-disk format (single GCM message, must be decrypted whole):
  *   [8 bytes magic "VISADENC"][12 bytes IV][ciphertext + 16 bytes GCM tag]
  *
- * The magic header allows backward-compatible detection: files without the
+ * Chunked on-disk format (written for all new uploads):
+ *   [8 bytes magic "VISADEC2"][4 bytes chunk size][7 bytes nonce prefix]
+ *   then per chunk: [ciphertext of up to chunk size bytes + 16 bytes GCM tag]
+ *
+ * Each chunk is sealed on its own with nonce = prefix + chunk index + last-chunk
+ * flag and the file header as associated data, so chunks can be decrypted
+ * independently (streaming, Range requests) while reordering, truncation and
+ * header tampering still fail authentication.
+ *
+ * The magic header allows backward-compatible detection: files without either
  * header are treated as plaintext and served as-is.
  */
 public class FileEncryptionUtil {
 
+    public enum Format { PLAINTEXT, LEGACY, CHUNKED }
+
     private static final byte[] MAGIC = "VISADENC".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] CHUNKED_MAGIC = "VISADEC2".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
     private static final int MAGIC_LEN = 8;
     private static final int IV_LEN = 12;
     private static final int GCM_TAG_BITS = 128;
+    private static final int GCM_TAG_LEN = GCM_TAG_BITS / 8;
+    private static final int NONCE_PREFIX_LEN = 7;
+    private static final int CHUNKED_HEADER_LEN = MAGIC_LEN + 4 + NONCE_PREFIX_LEN;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
 
     private final SecretKeySpec keySpec;
     private final SecureRandom random = new SecureRandom();
@@ -34,15 +63,25 @@ public class FileEncryptionUtil {
     }
 
     /**
-     * Returns true if the byte array starts with the VISADENC magic header.
+     * Returns true if the byte array starts with either encryption magic header.
      */
     public boolean isEncrypted(byte[] data) {
-        if (data == null || data.length < MAGIC_LEN) return false;
-        return Arrays.equals(Arrays.copyOf(data, MAGIC_LEN), MAGIC);
+        return formatOf(data) != Format.PLAINTEXT;
+    }
+
+    /**
+     * Detects the storage format from the first bytes of the file.
+     */
+    public Format detect(Path file) throws IOException {
+        byte[] head = new byte[MAGIC_LEN];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read = in.readNBytes(head, 0, MAGIC_LEN);
+            return read < MAGIC_LEN ? Format.PLAINTEXT : formatOf(head);
+        }
     }
 
     /**
-     * Encrypts plaintext bytes.
+     * Encrypts plaintext bytes in the legacy format.
      * Returns: [8B magic][12B IV][ciphertext + 16B GCM tag]
      */
     public byte[] encrypt(byte[] plaintext) throws GeneralSecurityException {
@@ -61,10 +100,59 @@ public class FileEncryptionUtil {
     }
 
     /**
-     * Decrypts bytes previously encrypted by {@link #encrypt(byte[])}.
+     * Encrypts a stream straight into the target file in the chunked format.
+     * Heap use is two chunk buffers regardless of input size. A partially
+     * written target is deleted on failure.
+     */
+    public void encrypt(InputStream in, Path target) throws IOException, GeneralSecurityException {
+        byte[] header = new byte[CHUNKED_HEADER_LEN];
+        System.arraycopy(CHUNKED_MAGIC, 0, header, 0, MAGIC_LEN);
+        ByteBuffer.wrap(header, MAGIC_LEN, 4).putInt(CHUNK_SIZE);
+        byte[] prefix = new byte[NONCE_PREFIX_LEN];
+        random.nextBytes(prefix);
+        System.arraycopy(prefix, 0, header, MAGIC_LEN + 4, NONCE_PREFIX_LEN);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+
+        try (OutputStream out = Files.newOutputStream(target)) {
+            out.write(header);
+
+            byte[] current = new byte[CHUNK_SIZE];
+            byte[] next = new byte[CHUNK_SIZE];
+            byte[] sealed = new byte[CHUNK_SIZE + GCM_TAG_LEN];
+            int currentLen = in.readNBytes(current, 0, CHUNK_SIZE);
+            int index = 0;
+            while (true) {
+                // Read one chunk ahead: the last chunk is sealed with its own flag
+                int nextLen = currentLen == CHUNK_SIZE ? in.readNBytes(next, 0, CHUNK_SIZE) : 0;
+                boolean last = nextLen == 0;
+                cipher.init(Cipher.ENCRYPT_MODE, keySpec, chunkNonce(header, index++, last));
+                cipher.updateAAD(header);
+                int sealedLen = cipher.doFinal(current, 0, currentLen, sealed, 0);
+                out.write(sealed, 0, sealedLen);
+                if (last) {
+                    break;
+                }
+                byte[] swap = current;
+                current = next;
+                next = swap;
+                currentLen = nextLen;
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Decrypts bytes previously encrypted in either format.
      */
     public byte[] decrypt(byte[] data) throws GeneralSecurityException {
-        if (!isEncrypted(data)) {
+        Format format = formatOf(data);
+        if (format == Format.CHUNKED) {
+            return decryptChunked(data);
+        }
+        if (format != Format.LEGACY) {
             throw new IllegalArgumentException("Data does not have the VISADENC header");
         }
         byte[] iv = Arrays.copyOfRange(data, MAGIC_LEN, MAGIC_LEN + IV_LEN);
@@ -74,4 +162,215 @@ public class FileEncryptionUtil {
         cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(GCM_TAG_BITS, iv));
         return cipher.doFinal(ciphertext);
     }
+
+    /**
+     * Plaintext size of a chunked file, computed from its size on disk.
+     */
+    public long plaintextLength(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ChunkLayout(readHeader(channel), channel.size()).plaintextLength;
+        }
+    }
+
+    /**
+     * Opens a chunked file for streaming decryption. Only one chunk is held in
+     * memory, and skip() seeks straight to the target chunk, so byte ranges
+     * cost one chunk decryption rather than the whole prefix.
+     */
+    public InputStream openDecryptingStream(Path file) throws IOException, GeneralSecurityException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            byte[] header = readHeader(channel);
+            return new ChunkedDecryptingInputStream(channel, header, new ChunkLayout(header, channel.size()),
+                    Cipher.getInstance("AES/GCM/NoPadding"));
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wraps a stored file as a download resource: plaintext is served straight
+     * from disk, chunked files are decrypted as they stream, and legacy files
+     * are decrypted in memory.
+     */
+    public Resource toDownloadResource(Path file, String filename) throws IOException, GeneralSecurityException {
+        switch (detect(file)) {
+            case CHUNKED:
+                return new EncryptedFileResource(file, filename, this);
+            case LEGACY:
+                return new NamedByteArrayResource(decrypt(Files.readAllBytes(file)), filename);
+            default:
+                return new NamedFileSystemResource(file, filename);
+        }
+    }
+
+    // --- Chunked format helpers ---
+
+    private static Format formatOf(byte[] data) {
+        if (data == null || data.length < MAGIC_LEN) return Format.PLAINTEXT;
+        byte[] head = Arrays.copyOf(data, MAGIC_LEN);
+        if (Arrays.equals(head, MAGIC)) return Format.LEGACY;
+        if (Arrays.equals(head, CHUNKED_MAGIC)) return Format.CHUNKED;
+        return Format.PLAINTEXT;
+    }
+
+    private static GCMParameterSpec chunkNonce(byte[] header, long index, boolean last) {
+        byte[] nonce = new byte[IV_LEN];
+        System.arraycopy(header, MAGIC_LEN + 4, nonce, 0, NONCE_PREFIX_LEN);
+        ByteBuffer.wrap(nonce, NONCE_PREFIX_LEN, 4).putInt((int) index);
+        nonce[IV_LEN - 1] = (byte) (last ? 1 : 0);
+        return new GCMParameterSpec(GCM_TAG_BITS, nonce);
+    }
+
+    private static byte[] readHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNKED_HEADER_LEN);
+        readFully(channel, buffer, 0);
+        byte[] header = buffer.array();
+        if (formatOf(header) != Format.CHUNKED) {
+            throw new IOException("File does not have the VISADEC2 header");
+        }
+        return header;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of encrypted file");
+            }
+            position += read;
+        }
+    }
+
+    private byte[] decryptChunked(byte[] data) throws GeneralSecurityException {
+        byte[] header = Arrays.copyOf(data, CHUNKED_HEADER_LEN);
+        ChunkLayout layout;
+        try {
+            layout = new ChunkLayout(header, data.length);
+        } catch (IOException e) {
+            throw new GeneralSecurityException(e.getMessage(), e);
+        }
+        byte[] plaintext = new byte[(int) layout.plaintextLength];
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        int written = 0;
+        for (long i = 0; i < layout.chunkCount; i++) {
+            cipher.init(Cipher.DECRYPT_MODE, keySpec, chunkNonce(header, i, i == layout.chunkCount - 1));
+            cipher.updateAAD(header);
+            written += cipher.doFinal(data, (int) layout.sealedOffset(i), layout.sealedLength(i), plaintext, written);
+        }
+        return plaintext;
+    }
+
+    private static final class ChunkLayout {
+        final int chunkSize;
+        final long bodyLength;
+        final long chunkCount;
+        final long plaintextLength;
+
+        ChunkLayout(byte[] header, long fileSize) throws IOException {
+            chunkSize = ByteBuffer.wrap(header, MAGIC_LEN, 4).getInt();
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IOException("Invalid chunk size in encrypted file header");
+            }
+            long stride = (long) chunkSize + GCM_TAG_LEN;
+            bodyLength = fileSize - CHUNKED_HEADER_LEN;
+            chunkCount = (bodyLength + stride - 1) / stride;
+            if (chunkCount == 0 || bodyLength - (chunkCount - 1) * stride < GCM_TAG_LEN) {
+                throw new IOException("Encrypted file is truncated");
+            }
+            plaintextLength = bodyLength - chunkCount * GCM_TAG_LEN;
+        }
+
+        long sealedOffset(long index) {
+            return CHUNKED_HEADER_LEN + index * ((long) chunkSize + GCM_TAG_LEN);
+        }
+
+        int sealedLength(long index) {
+            long stride = (long) chunkSize + GCM_TAG_LEN;
+            return (int) Math.min(stride, bodyLength - index * stride);
+        }
+    }
+
+    private final class ChunkedDecryptingInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final byte[] header;
+        private final ChunkLayout layout;
+        private final Cipher cipher;
+        private final ByteBuffer sealed;
+        private final byte[] plain;
+
+        private long position;
+        private long loadedChunk = -1;
+        private int plainLength;
+
+        ChunkedDecryptingInputStream(FileChannel channel, byte[] header, ChunkLayout layout, Cipher cipher) {
+            this.channel = channel;
+            this.header = header;
+            this.layout = layout;
+            this.cipher = cipher;
+            this.sealed = ByteBuffer.allocate(layout.chunkSize + GCM_TAG_LEN);
+            this.plain = new byte[layout.chunkSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= layout.plaintextLength) {
+                return -1;
+            }
+            long chunk = position / layout.chunkSize;
+            if (chunk != loadedChunk) {
+                load(chunk);
+            }
+            int offsetInChunk = (int) (position % layout.chunkSize);
+            int n = Math.min(len, plainLength - offsetInChunk);
+            System.arraycopy(plain, offsetInChunk, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            // Lazy seek: the target chunk is decrypted on the next read
+            long target = Math.min(layout.plaintextLength, position + Math.max(0, n));
+            long skipped = target - position;
+            position = target;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, layout.plaintextLength - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void load(long chunk) throws IOException {
+            sealed.clear().limit(layout.sealedLength(chunk));
+            readFully(channel, sealed, layout.sealedOffset(chunk));
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, keySpec, chunkNonce(header, chunk, chunk == layout.chunkCount - 1));
+                cipher.updateAAD(header);
+                plainLength = cipher.doFinal(sealed.array(), 0, sealed.limit(), plain, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Encrypted file failed authentication at chunk " + chunk, e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to decrypt chunk " + chunk, e);
+            }
+            loadedChunk = chunk;
+        }
+    }
 }
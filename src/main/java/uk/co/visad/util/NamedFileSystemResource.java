@@ -0,0 +1,24 @@
+package uk.co.visad.util;
+
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Path;
+
+/**
+ * FileSystemResource that returns a user-visible filename from getFilename().
+ * Needed for content-addressed blobs, whose file on disk is named by its hash.
+ */
+public class NamedFileSystemResource extends FileSystemResource {
+
+    private final String filename;
+
+    public NamedFileSystemResource(Path file, String filename) {
+        super(file);
+        this.filename = filename;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+}
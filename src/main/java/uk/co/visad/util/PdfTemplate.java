@@ -0,0 +1,72 @@
+package uk.co.visad.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-parsed XHTML template for PDF rendering.
+ *
+ * The source is split once into literal text and placeholders, so rendering
+ * is a single pass of appends. {{name}} inserts an HTML-escaped value,
+ * {{{name}}} inserts raw markup (e.g. a rendered row fragment). Missing
+ * values render as empty strings.
+ */
+public final class PdfTemplate {
+
+    private final List<String> literals;
+    private final List<Placeholder> placeholders;
+    private final int sizeHint;
+
+    private record Placeholder(String name, boolean raw) {
+    }
+
+    private PdfTemplate(List<String> literals, List<Placeholder> placeholders, int sizeHint) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.sizeHint = sizeHint;
+    }
+
+    public static PdfTemplate parse(String source) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            boolean raw = source.startsWith("{{{", open);
+            String close = raw ? "}}}" : "}}";
+            int end = source.indexOf(close, open);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at offset " + open);
+            }
+            literals.add(source.substring(pos, open));
+            placeholders.add(new Placeholder(source.substring(open + close.length(), end).trim(), raw));
+            pos = end + close.length();
+        }
+        literals.add(source.substring(pos));
+        return new PdfTemplate(List.copyOf(literals), List.copyOf(placeholders), source.length());
+    }
+
+    public String render(Map<String, String> values) {
+        StringBuilder out = new StringBuilder(sizeHint + 256);
+        for (int i = 0; i < placeholders.size(); i++) {
+            out.append(literals.get(i));
+            Placeholder placeholder = placeholders.get(i);
+            String value = values.get(placeholder.name());
+            if (value != null) {
+                out.append(placeholder.raw() ? value : escape(value));
+            }
+        }
+        out.append(literals.get(literals.size() - 1));
+        return out.toString();
+    }
+
+    public static String escape(String text) {
+        if (text == null) return "";
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("'", "&#39;");
+    }
+}
@@ -105,7 +105,9 @@ CREATE TABLE IF NOT EXISTS travelers (
     
     INDEX idx_travelers_passport (passport_no),
     INDEX idx_travelers_email (email),
-    INDEX idx_travelers_status (status)
+    INDEX idx_travelers_status (status),
+    INDEX idx_travelers_created_id (created_at, id),
+    UNIQUE KEY public_url_token (public_url_token)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 -- 3. Dependents (Entity: Dependent.java)
@@ -185,7 +187,8 @@ CREATE TABLE IF NOT EXISTS dependents (
     
     CONSTRAINT fk_dependents_traveler FOREIGN KEY (traveler_id) REFERENCES travelers(id) ON DELETE CASCADE,
     INDEX idx_dependents_traveler_id (traveler_id),
-    INDEX idx_dependents_passport (passport_no)
+    INDEX idx_dependents_passport (passport_no),
+    UNIQUE KEY public_url_token (public_url_token)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 -- 4. TravelerQuestions (Entity: TravelerQuestions.java)
@@ -293,15 +296,84 @@ CREATE TABLE IF NOT EXISTS invoice_history (
 -- 9. EmailLog (Entity: EmailLog.java)
 CREATE TABLE IF NOT EXISTS email_log (
     id INT AUTO_INCREMENT PRIMARY KEY,
-    record_id INT NOT NULL,
-    record_type VARCHAR(20) NOT NULL,
+    record_id INT,
+    record_type VARCHAR(20),
     recipient_email VARCHAR(150) NOT NULL,
     sent_by INT,
-    sent_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    sent_at TIMESTAMP NULL,
     subject VARCHAR(255),
-    status VARCHAR(20) DEFAULT 'sent',
-    
-    INDEX idx_email_log_record (record_id, record_type)
+    status VARCHAR(20) DEFAULT 'queued',
+    email_type VARCHAR(20),
+    payload MEDIUMTEXT,
+    attempts INT DEFAULT 0,
+    next_attempt_at DATETIME,
+    last_error VARCHAR(500),
+    claim_token VARCHAR(36),
+    queued_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    
+    INDEX idx_email_log_record (record_id, record_type),
+    INDEX idx_email_log_due (status, next_attempt_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 10. Presence (JdbcPresenceStore, only used when app.presence.store=jdbc)
+CREATE TABLE IF NOT EXISTS presence_sessions (
+    session_id VARCHAR(100) PRIMARY KEY,
+    user_id VARCHAR(100) NOT NULL,
+    username VARCHAR(50),
+    node_id VARCHAR(64) NOT NULL,
+    activity_json TEXT,
+    last_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    INDEX idx_presence_sessions_user (user_id),
+    INDEX idx_presence_sessions_node (node_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS presence_version (
+    id INT PRIMARY KEY,
+    version BIGINT NOT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+INSERT IGNORE INTO presence_version (id, version) VALUES (1, 0);
+
+-- 11. File blobs (BlobStoreService: content-addressed, reference-counted uploads)
+CREATE TABLE IF NOT EXISTS file_blobs (
+    sha256 CHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    ref_count INT NOT NULL DEFAULT 1,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS file_refs (
+    ref_key VARCHAR(255) PRIMARY KEY,
+    sha256 CHAR(64) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    INDEX idx_file_refs_sha256 (sha256)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 12. PackagePricing (Entity: PackagePricing.java, read by PricingService)
+-- country / visa_type = '' is the base price; non-empty values override it
+CREATE TABLE IF NOT EXISTS package_pricing (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    package_name VARCHAR(100) NOT NULL,
+    country VARCHAR(100) NOT NULL DEFAULT '',
+    visa_type VARCHAR(100) NOT NULL DEFAULT '',
+    package_code VARCHAR(50),
+    price DECIMAL(10, 2) NOT NULL,
+    currency VARCHAR(3) DEFAULT 'GBP',
+    description TEXT,
+    is_active BOOLEAN DEFAULT TRUE,
+    sort_order INT DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NULL ON UPDATE CURRENT_TIMESTAMP,
+
+    UNIQUE INDEX idx_package_pricing_key (package_name, country, visa_type)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+INSERT IGNORE INTO package_pricing (package_name, price, sort_order) VALUES
+    ('Appointment Only', 99.00, 1),
+    ('Full Support', 149.00, 2),
+    ('Fast Track Appointment', 199.00, 3),
+    ('Fast Track Full Support', 349.00, 4);
+
 SET FOREIGN_KEY_CHECKS = 1;
@@ -0,0 +1,178 @@
+package uk.co.visad.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityFilterAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+import uk.co.visad.config.WebSocketConfig;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Several hundred clients reconnecting at once (e.g. after a deploy) over
+ * SockJS, none of them with a cached principal: users lookups must stay
+ * within app.websocket.connect.max-concurrent and refused CONNECTs must get an
+ * ERROR frame telling the client when to retry.
+ */
+@SpringBootTest(classes = WebSocketReconnectStormTest.WebSocketApp.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "app.websocket.connect.max-concurrent=4",
+                "app.websocket.connect.acquire-timeout-ms=50",
+                "app.websocket.connect.retry-base-ms=1000",
+                "app.websocket.connect.retry-jitter-ms=5000"
+        })
+class WebSocketReconnectStormTest {
+
+    private static final int CLIENTS = 300;
+    private static final long LOOKUP_MS = 100;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${app.websocket.connect.max-concurrent}")
+    private int maxConcurrent;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @MockBean
+    private CustomUserDetailsService userDetailsService;
+
+    private final AtomicInteger lookupsInFlight = new AtomicInteger();
+    private final AtomicInteger peakLookups = new AtomicInteger();
+
+    @BeforeEach
+    void slowUsersTable() {
+        when(userDetailsService.loadUserByUsername(anyString())).thenAnswer(invocation -> {
+            peakLookups.accumulateAndGet(lookupsInFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(LOOKUP_MS);
+                String username = invocation.getArgument(0);
+                return UserPrincipal.builder()
+                        .id((long) username.hashCode())
+                        .username(username)
+                        .role("admin")
+                        .authorities(List.of(new SimpleGrantedAuthority("ROLE_ADMIN")))
+                        .build();
+            } finally {
+                lookupsInFlight.decrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    void reconnectStormIsThrottledWithRetryHints() throws InterruptedException {
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        String url = "http://localhost:" + port + "/api/ws";
+
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        AtomicInteger connected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Queue<StompHeaders> errors = new ConcurrentLinkedQueue<>();
+
+        for (int i = 0; i < CLIENTS; i++) {
+            // Distinct users, so the principal cache cannot absorb the storm
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization",
+                    "Bearer " + jwtUtils.generateTokenFromUsername("user" + i, (long) i, "admin"));
+            stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders,
+                    new Outcome(done, connected, failed, errors));
+        }
+
+        assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+        stompClient.stop();
+
+        assertThat(failed.get()).isZero();
+        assertThat(connected.get() + errors.size()).isEqualTo(CLIENTS);
+        assertThat(connected.get()).isPositive();
+        assertThat(errors).isNotEmpty();
+        assertThat(errors).allSatisfy(headers -> {
+            assertThat(headers.getFirst("retry-after-ms")).isNotNull();
+            assertThat(Long.parseLong(headers.getFirst("retry-after-ms"))).isBetween(1000L, 6000L);
+        });
+        assertThat(peakLookups.get()).isPositive().isLessThanOrEqualTo(maxConcurrent);
+    }
+
+    /**
+     * Records how one client's CONNECT ended: CONNECTED, an ERROR frame, or a transport failure.
+     */
+    private static class Outcome extends StompSessionHandlerAdapter {
+        private final CountDownLatch done;
+        private final AtomicInteger connected;
+        private final AtomicInteger failed;
+        private final Queue<StompHeaders> errors;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Outcome(CountDownLatch done, AtomicInteger connected, AtomicInteger failed, Queue<StompHeaders> errors) {
+            this.done = done;
+            this.connected = connected;
+            this.failed = failed;
+            this.errors = errors;
+        }
+
+        @Override
+        public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+            if (finished.compareAndSet(false, true)) {
+                connected.incrementAndGet();
+                done.countDown();
+            }
+            session.disconnect();
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            // Only ERROR frames reach the session handler; the server closes the connection after it
+            if (finished.compareAndSet(false, true)) {
+                errors.add(headers);
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            if (finished.compareAndSet(false, true)) {
+                failed.incrementAndGet();
+                done.countDown();
+            }
+        }
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, SecurityAutoConfiguration.class,
+            SecurityFilterAutoConfiguration.class, UserDetailsServiceAutoConfiguration.class})
+    @Import({WebSocketConfig.class, AuthChannelInterceptor.class, StompConnectErrorHandler.class,
+            JwtUtils.class, JwtPrincipalCache.class})
+    static class WebSocketApp {
+    }
+}
@@ -0,0 +1,278 @@
+package uk.co.visad.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.Message;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import uk.co.visad.dto.EmailInvoiceRequest;
+import uk.co.visad.entity.EmailLog;
+import uk.co.visad.repository.EmailLogRepository;
+import uk.co.visad.security.JwtPrincipalCache;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Outbox lifecycle against H2 (MariaDB mode) and a GreenMail SMTP server.
+ * Workers are disabled; each test drives the worker step with processBatch().
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:outbox;MODE=MariaDB;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=never",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "app.email.outbox.workers=0",
+        "app.email.outbox.max-attempts=3",
+        "app.email.outbox.backoff-ms=30000",
+        "app.email.outbox.lease-ms=300000"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({EmailOutboxService.class, EmailOutboxServiceTest.GreenMailSender.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailOutboxServiceTest {
+
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Autowired
+    private EmailOutboxService outbox;
+
+    @Autowired
+    private EmailLogRepository emailLogRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @MockBean
+    private EmailService emailService;
+
+    // Needed by the entity listeners Hibernate resolves from the context
+    @MockBean
+    private LockerTokenResolver lockerTokenResolver;
+
+    @MockBean
+    private InvoiceViewCache invoiceViewCache;
+
+    @MockBean
+    private JwtPrincipalCache jwtPrincipalCache;
+
+    @TestConfiguration
+    static class GreenMailSender {
+        @Bean
+        JavaMailSender mailSender() {
+            JavaMailSenderImpl sender = new JavaMailSenderImpl();
+            sender.setHost("localhost");
+            sender.setPort(ServerSetupTest.SMTP.getPort());
+            return sender;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        emailLogRepository.deleteAll();
+
+        when(emailService.isTInvoice(any())).thenReturn(false);
+        when(emailService.invoiceSubject(any())).thenAnswer(inv ->
+                "Invoice " + inv.<EmailInvoiceRequest>getArgument(0).getInvoiceNumber());
+        when(emailService.generateInvoicePdf(any())).thenReturn(new byte[]{'%', 'P', 'D', 'F'});
+        when(emailService.buildInvoiceMessage(any(), anyList(), any(), any(), anyBoolean(), any()))
+                .thenAnswer(inv -> {
+                    EmailInvoiceRequest request = inv.getArgument(0);
+                    List<String> to = inv.getArgument(1);
+                    MimeMessage message = mailSender.createMimeMessage();
+                    message.setFrom(new InternetAddress("info@visad.co.uk"));
+                    for (String recipient : to) {
+                        message.addRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
+                    }
+                    message.setSubject("Invoice " + request.getInvoiceNumber());
+                    message.setText("Dear " + inv.getArgument(3));
+                    return message;
+                });
+    }
+
+    @Test
+    void enqueuedInvoiceIsClaimedAndSent() throws Exception {
+        Long id = outbox.enqueueInvoice(invoice("INV-1", "client@example.com")).get(0);
+
+        EmailLog queued = emailLogRepository.findById(id).orElseThrow();
+        assertThat(queued.getStatus()).isEqualTo("queued");
+        assertThat(queued.getRecipientEmail()).isEqualTo("client@example.com");
+        assertThat(queued.getSubject()).isEqualTo("Invoice INV-1");
+
+        assertThat(outbox.processBatch()).isEqualTo(1);
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(1);
+        assertThat(received[0].getSubject()).isEqualTo("Invoice INV-1");
+        assertThat(GreenMailUtil.getAddressList(received[0].getAllRecipients())).isEqualTo("client@example.com");
+
+        EmailLog sent = emailLogRepository.findById(id).orElseThrow();
+        assertThat(sent.getStatus()).isEqualTo("sent");
+        assertThat(sent.getAttempts()).isEqualTo(1);
+        assertThat(sent.getSentAt()).isNotNull();
+        assertThat(sent.getClaimToken()).isNull();
+        verify(emailService).logHistory(eq(42L), eq("traveler"), eq("invoice"), eq("INV-1"),
+                eq("client@example.com"));
+
+        // Nothing left to claim
+        assertThat(outbox.processBatch()).isZero();
+    }
+
+    @Test
+    void smtpFailureIsRetriedWithBackoffThenMarkedFailed() throws Exception {
+        Long id = outbox.enqueueInvoice(invoice("INV-2", "client@example.com")).get(0);
+        greenMail.stop();
+
+        LocalDateTime before = LocalDateTime.now();
+        assertThat(outbox.processBatch()).isEqualTo(1);
+
+        EmailLog retry = emailLogRepository.findById(id).orElseThrow();
+        assertThat(retry.getStatus()).isEqualTo("queued");
+        assertThat(retry.getAttempts()).isEqualTo(1);
+        assertThat(retry.getLastError()).isNotBlank();
+        assertThat(retry.getClaimToken()).isNull();
+        // First retry: backoff-ms plus up to 20% jitter
+        assertThat(retry.getNextAttemptAt())
+                .isAfterOrEqualTo(before.plusSeconds(30))
+                .isBefore(LocalDateTime.now().plusSeconds(37));
+
+        // Not due yet, so not claimed again
+        assertThat(outbox.processBatch()).isZero();
+
+        // Second failure doubles the backoff
+        makeDue(id);
+        before = LocalDateTime.now();
+        assertThat(outbox.processBatch()).isEqualTo(1);
+        retry = emailLogRepository.findById(id).orElseThrow();
+        assertThat(retry.getAttempts()).isEqualTo(2);
+        assertThat(retry.getNextAttemptAt()).isAfterOrEqualTo(before.plusSeconds(60));
+
+        // max-attempts reached
+        makeDue(id);
+        assertThat(outbox.processBatch()).isEqualTo(1);
+        EmailLog failed = emailLogRepository.findById(id).orElseThrow();
+        assertThat(failed.getStatus()).isEqualTo("failed");
+        assertThat(failed.getAttempts()).isEqualTo(3);
+        verify(emailService, never()).logHistory(any(), any(), any(), any(), any());
+
+        makeDue(id);
+        assertThat(outbox.processBatch()).isZero();
+    }
+
+    @Test
+    void retryAfterSmtpRecoversIsSent() throws Exception {
+        Long id = outbox.enqueueInvoice(invoice("INV-3", "client@example.com")).get(0);
+        greenMail.stop();
+        assertThat(outbox.processBatch()).isEqualTo(1);
+        assertThat(emailLogRepository.findById(id).orElseThrow().getStatus()).isEqualTo("queued");
+
+        greenMail.start();
+        makeDue(id);
+        assertThat(outbox.processBatch()).isEqualTo(1);
+
+        EmailLog sent = emailLogRepository.findById(id).orElseThrow();
+        assertThat(sent.getStatus()).isEqualTo("sent");
+        assertThat(sent.getAttempts()).isEqualTo(2);
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+    }
+
+    @Test
+    void staleClaimIsReclaimedOnceItsLeaseExpires() throws Exception {
+        Long stale = outbox.enqueueInvoice(invoice("INV-4", "stale@example.com")).get(0);
+        Long live = outbox.enqueueInvoice(invoice("INV-5", "live@example.com")).get(0);
+
+        // Both claimed by a worker that died mid-send; only the first lease has run out
+        claimedByDeadWorker(stale, LocalDateTime.now().minusSeconds(1));
+        claimedByDeadWorker(live, LocalDateTime.now().plusMinutes(5));
+
+        assertThat(outbox.processBatch()).isEqualTo(1);
+
+        assertThat(emailLogRepository.findById(stale).orElseThrow().getStatus()).isEqualTo("sent");
+        EmailLog stillLeased = emailLogRepository.findById(live).orElseThrow();
+        assertThat(stillLeased.getStatus()).isEqualTo("sending");
+        assertThat(stillLeased.getClaimToken()).isEqualTo("dead-worker");
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(1);
+        assertThat(GreenMailUtil.getAddressList(received[0].getAllRecipients())).isEqualTo("stale@example.com");
+    }
+
+    @Test
+    void outcomeOfLapsedLeaseDoesNotOverwriteNewClaim() throws Exception {
+        Long id = outbox.enqueueInvoice(invoice("INV-6", "client@example.com")).get(0);
+
+        // While this worker is still building the message its lease lapses and another worker claims the row
+        when(emailService.generateInvoicePdf(any())).thenAnswer(inv -> {
+            jdbcTemplate.update("UPDATE email_log SET claim_token = 'new-worker' WHERE id = ?", id);
+            return new byte[]{'%', 'P', 'D', 'F'};
+        });
+
+        assertThat(outbox.processBatch()).isEqualTo(1);
+
+        EmailLog row = emailLogRepository.findById(id).orElseThrow();
+        assertThat(row.getStatus()).isEqualTo("sending");
+        assertThat(row.getClaimToken()).isEqualTo("new-worker");
+        assertThat(row.getAttempts()).isZero();
+        assertThat(row.getSentAt()).isNull();
+        verify(emailService, never()).logHistory(any(), any(), any(), any(), any());
+    }
+
+    private void makeDue(Long id) {
+        jdbcTemplate.update("UPDATE email_log SET next_attempt_at = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), id);
+    }
+
+    private void claimedByDeadWorker(Long id, LocalDateTime leaseUntil) {
+        jdbcTemplate.update("UPDATE email_log SET status = 'sending', claim_token = 'dead-worker', " +
+                "next_attempt_at = ? WHERE id = ?", Timestamp.valueOf(leaseUntil), id);
+    }
+
+    private static EmailInvoiceRequest invoice(String number, String email) {
+        EmailInvoiceRequest request = new EmailInvoiceRequest();
+        request.setRecordId(42L);
+        request.setRecordType("traveler");
+        request.setInvoiceNumber(number);
+        request.setCustomerName("Jane Client");
+        request.setCustomerEmail(email);
+        request.setTotal("100.00");
+        return request;
+    }
+}
@@ -0,0 +1,90 @@
+package uk.co.visad.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.co.visad.dto.EmailInvoiceRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invoice rendering throughput for 1-item and 20-item invoices, single
+ * threaded and with as many threads as the render limit (app.pdf.max-concurrent).
+ *
+ * Run with: mvn -Pjmh test -DskipTests -Djmh.benchmarks=PdfServiceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PdfServiceBenchmark {
+
+    private static final int MAX_CONCURRENT = 4;
+
+    @Param({"1", "20"})
+    private int items;
+
+    private PdfService pdfService;
+    private EmailInvoiceRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        pdfService = new PdfService();
+        ReflectionTestUtils.setField(pdfService, "fontDir", "");
+        ReflectionTestUtils.setField(pdfService, "maxConcurrent", MAX_CONCURRENT);
+        ReflectionTestUtils.setField(pdfService, "acquireTimeoutMs", 30_000L);
+        pdfService.init();
+        request = invoice(items);
+    }
+
+    @Benchmark
+    public byte[] renderInvoice() {
+        return pdfService.renderInvoice(request);
+    }
+
+    @Benchmark
+    @Threads(MAX_CONCURRENT)
+    public byte[] renderInvoiceConcurrently() {
+        return pdfService.renderInvoice(request);
+    }
+
+    private static EmailInvoiceRequest invoice(int itemCount) {
+        List<EmailInvoiceRequest.EmailItemDto> lines = new ArrayList<>();
+        for (int i = 1; i <= itemCount; i++) {
+            EmailInvoiceRequest.EmailItemDto item = new EmailInvoiceRequest.EmailItemDto();
+            item.setName("Applicant " + i);
+            item.setPackage_("Standard");
+            item.setVisaType("Tourist");
+            item.setCountry("France");
+            item.setPrice("89.00");
+            lines.add(item);
+        }
+        EmailInvoiceRequest request = new EmailInvoiceRequest();
+        request.setAction("send_invoice");
+        request.setInvoiceNumber("INV-BENCH");
+        request.setCustomerName("Jane Client");
+        request.setCustomerAddress("1 High Street, London");
+        request.setCustomerEmail("client@example.com");
+        request.setInvoiceItems(lines);
+        request.setSubtotal(String.format("%.2f", 89.0 * itemCount));
+        request.setDiscountAmount("10.00");
+        request.setDiscountPercent("5");
+        request.setTotal(String.format("%.2f", 89.0 * itemCount - 10));
+        return request;
+    }
+}
@@ -0,0 +1,222 @@
+package uk.co.visad.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import uk.co.visad.entity.Traveler;
+import uk.co.visad.repository.DependentRepository;
+import uk.co.visad.repository.TravelerQuestionsRepository;
+import uk.co.visad.repository.TravelerRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Two application contexts sharing one InMemoryPresenceStore and one in-process
+ * STOMP broker, standing in for two nodes behind the broker relay. Each node
+ * publishes through its own SimpMessagingTemplate; a client subscribed on the
+ * other node must receive the events.
+ */
+class PresenceBroadcastClusterTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final InMemoryPresenceStore store = new InMemoryPresenceStore();
+
+    // Frames delivered to a client connected to each node, BATCH frames unpacked
+    private final List<Map<String, Object>> receivedOnA = new CopyOnWriteArrayList<>();
+    private final List<Map<String, Object>> receivedOnB = new CopyOnWriteArrayList<>();
+
+    private SimpleBrokerMessageHandler broker;
+    private ExecutorSubscribableChannel brokerChannel;
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        brokerChannel = new ExecutorSubscribableChannel();
+        broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic"));
+        broker.start();
+
+        clientOutbound.subscribe(message -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+                return;
+            }
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            List<Map<String, Object>> received = "client-a".equals(sessionId) ? receivedOnA : receivedOnB;
+            received.addAll(unpack(message));
+        });
+        subscribe(clientInbound, "client-a", "/topic/presence");
+        subscribe(clientInbound, "client-b", "/topic/presence");
+
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        broker.stop();
+    }
+
+    @Test
+    void presenceDeltaFromOneNodeReachesClientsOnTheOther() throws InterruptedException {
+        nodeA.getBean(PresenceService.class).registerSession("session-a", "1", "alice");
+
+        Map<String, Object> delta = await(receivedOnB, event -> "UPDATE".equals(event.get("type")));
+        assertThat(delta).isNotNull();
+        assertThat(delta).containsEntry("sessionId", "session-a")
+                .containsEntry("username", "alice")
+                .containsEntry("status", "CONNECTED");
+
+        // Both nodes read the shared store, so B's snapshot agrees with the delta
+        PresenceService presenceB = nodeB.getBean(PresenceService.class);
+        assertThat(presenceB.getActiveUsernames()).containsExactly("alice");
+        assertThat(((Number) delta.get("version")).longValue()).isEqualTo(presenceB.getVersion());
+
+        nodeB.getBean(PresenceService.class).registerSession("session-b", "2", "bob");
+        assertThat(await(receivedOnA, event -> "session-b".equals(event.get("sessionId")))).isNotNull();
+    }
+
+    @Test
+    void dataUpdateFromOneNodeReachesClientsOnTheOther() throws InterruptedException {
+        Traveler traveler = Traveler.builder().id(7L).name("Old Name").build();
+        when(nodeA.getBean(TravelerRepository.class).findById(7L)).thenReturn(Optional.of(traveler));
+
+        nodeA.getBean(TravelerService.class).updateField(7L, "name", "New Name");
+
+        Map<String, Object> update = await(receivedOnB, event -> "DATA_UPDATE".equals(event.get("type")));
+        assertThat(update).isNotNull();
+        assertThat(update).containsEntry("targetType", "TRAVELER")
+                .containsEntry("targetId", 7)
+                .containsEntry("field", "name")
+                .containsEntry("value", "New Name");
+    }
+
+    private ConfigurableApplicationContext startNode() {
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate(brokerChannel);
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter());
+        return new SpringApplicationBuilder(BroadcastNode.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .initializers(context -> {
+                    context.getBeanFactory().registerSingleton("presenceStore", store);
+                    context.getBeanFactory().registerSingleton("messagingTemplate", messagingTemplate);
+                })
+                .run();
+    }
+
+    private static void subscribe(ExecutorSubscribableChannel clientInbound, String sessionId, String destination) {
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId(sessionId);
+        clientInbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(sessionId + "-sub");
+        headers.setDestination(destination);
+        clientInbound.send(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> unpack(Message<?> message) {
+        try {
+            Map<String, Object> frame = JSON.readValue((byte[]) message.getPayload(), new TypeReference<>() {
+            });
+            return "BATCH".equals(frame.get("type"))
+                    ? (List<Map<String, Object>>) frame.get("events")
+                    : List.of(frame);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable broadcast frame", e);
+        }
+    }
+
+    private static Map<String, Object> await(List<Map<String, Object>> received,
+            Predicate<Map<String, Object>> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            Optional<Map<String, Object>> match = received.stream().filter(condition).findFirst();
+            if (match.isPresent()) {
+                return match.get();
+            }
+            Thread.sleep(50);
+        }
+        return null;
+    }
+
+    @Configuration
+    @Import({PresenceService.class, CoalescingBroadcaster.class, TravelerService.class})
+    static class BroadcastNode {
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        TravelerRepository travelerRepository() {
+            return Mockito.mock(TravelerRepository.class);
+        }
+
+        @Bean
+        DependentRepository dependentRepository() {
+            return Mockito.mock(DependentRepository.class);
+        }
+
+        @Bean
+        TravelerQuestionsRepository travelerQuestionsRepository() {
+            return Mockito.mock(TravelerQuestionsRepository.class);
+        }
+
+        @Bean
+        VisaUrlService visaUrlService() {
+            return Mockito.mock(VisaUrlService.class);
+        }
+
+        @Bean
+        AuditService auditService() {
+            return Mockito.mock(AuditService.class);
+        }
+
+        @Bean
+        TravelerCountService travelerCountService() {
+            return Mockito.mock(TravelerCountService.class);
+        }
+
+        @Bean
+        BlobStoreService blobStoreService() {
+            return Mockito.mock(BlobStoreService.class);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package uk.co.visad.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import uk.co.visad.config.PresenceStoreConfig;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application contexts sharing one H2 database through JdbcPresenceStore,
+ * standing in for two nodes of a cluster.
+ */
+class PresenceClusterTest {
+
+    private static final String DB_URL = "jdbc:h2:mem:presence;MODE=MariaDB;DB_CLOSE_DELAY=-1";
+
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(DB_URL));
+        jdbc.execute("DROP ALL OBJECTS");
+        jdbc.execute("CREATE TABLE presence_sessions (session_id VARCHAR(100) PRIMARY KEY, " +
+                "user_id VARCHAR(100) NOT NULL, username VARCHAR(50), node_id VARCHAR(64) NOT NULL, " +
+                "activity_json TEXT, last_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        jdbc.execute("CREATE TABLE presence_version (id INT PRIMARY KEY, version BIGINT NOT NULL)");
+        jdbc.execute("INSERT INTO presence_version (id, version) VALUES (1, 0)");
+
+        // Node A renews its lease only at startup, like a node that hangs or dies afterwards
+        nodeA = startNode(3_600_000);
+        nodeB = startNode(200);
+    }
+
+    @AfterEach
+    void stopNodes() {
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (nodeA != null) {
+            nodeA.close();
+        }
+    }
+
+    @Test
+    void sessionOnOneNodeIsVisibleOnTheOther() {
+        nodeA.getBean(PresenceService.class).registerSession("session-a", "1", "alice");
+
+        PresenceService presenceB = nodeB.getBean(PresenceService.class);
+        assertThat(presenceB.getActiveUserCount()).isEqualTo(1);
+        assertThat(presenceB.getActiveUsernames()).containsExactly("alice");
+        assertThat(usernames(presenceB.getSnapshot())).containsExactly("alice");
+        assertThat(presenceB.getSnapshot().get("version")).isEqualTo(presenceB.getVersion());
+    }
+
+    @Test
+    void sessionExpiresWhenItsNodesLeaseLapses() throws InterruptedException {
+        nodeA.getBean(PresenceService.class).registerSession("session-a", "1", "alice");
+        nodeB.getBean(PresenceService.class).registerSession("session-b", "2", "bob");
+
+        PresenceService presenceB = nodeB.getBean(PresenceService.class);
+        assertThat(usernames(presenceB.getSnapshot())).containsExactlyInAnyOrder("alice", "bob");
+        long versionBefore = presenceB.getVersion();
+
+        // B keeps renewing its own lease and purges A's rows once theirs lapses; the
+        // snapshot only changes once the purge has bumped the version
+        assertThat(await(() -> usernames(presenceB.getSnapshot()).equals(List.of("bob")))).isTrue();
+        assertThat(presenceB.getActiveUserCount()).isEqualTo(1);
+        assertThat(presenceB.getVersion()).isGreaterThan(versionBefore);
+    }
+
+    private static ConfigurableApplicationContext startNode(long leaseRenewMs) {
+        return new SpringApplicationBuilder(PresenceNode.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run("--app.presence.store=jdbc",
+                        "--app.presence.lease-timeout-seconds=1",
+                        "--app.presence.lease-renew-ms=" + leaseRenewMs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> usernames(Map<String, Object> snapshot) {
+        return ((List<Map<String, Object>>) snapshot.get("users")).stream()
+                .map(user -> user.get("username"))
+                .toList();
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return condition.getAsBoolean();
+    }
+
+    @Configuration
+    @EnableScheduling
+    @Import({PresenceStoreConfig.class, PresenceService.class, CoalescingBroadcaster.class})
+    static class PresenceNode {
+
+        @Bean
+        DataSource dataSource() {
+            return new DriverManagerDataSource(DB_URL);
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        SimpMessagingTemplate messagingTemplate() {
+            return Mockito.mock(SimpMessagingTemplate.class);
+        }
+    }
+}